@@ -2,6 +2,8 @@ package net.konjarla.aifilemonitor;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationEvent;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.scheduling.annotation.EnableAsync;
 
@@ -9,6 +11,16 @@ import org.springframework.scheduling.annotation.EnableAsync;
 @EnableAsync
 public class AiFileMonitorApplication {
     public static void main(String[] args) {
-        SpringApplication.run(AiFileMonitorApplication.class, args);
+        SpringApplication application = new SpringApplication(AiFileMonitorApplication.class);
+        application.addListeners(AiFileMonitorApplication::onEnvironmentPrepared);
+        application.run(args);
+    }
+
+    // MCP tool calls are dispatched on Reactor's bounded elastic scheduler, which reads this flag once
+    private static void onEnvironmentPrepared(ApplicationEvent event) {
+        if (event instanceof ApplicationEnvironmentPreparedEvent prepared
+                && prepared.getEnvironment().getProperty("spring.threads.virtual.enabled", Boolean.class, false)) {
+            System.setProperty("reactor.schedulers.defaultBoundedElasticOnVirtualThreads", "true");
+        }
     }
 } 
\ No newline at end of file
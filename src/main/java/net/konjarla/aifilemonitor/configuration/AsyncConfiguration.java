@@ -1,19 +1,29 @@
 package net.konjarla.aifilemonitor.configuration;
 
-import net.konjarla.aifilemonitor.monitoring.model.TaskStatus;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 @Configuration
 @EnableAsync
+@EnableScheduling
 public class AsyncConfiguration {
+    // Opt-in: I/O bound executors run their tasks on virtual threads, see DownstreamLimiter for concurrency limits
+    @Value("${spring.threads.virtual.enabled}")
+    private boolean virtualThreads;
+
     @Bean(name = "scanTaskExecutor")
-    public TaskExecutor taskExecutor() {
+    public TaskExecutor taskExecutor(@Value("${virtual.threads.max-concurrency.scan}") int maxConcurrency) {
+        if (virtualThreads) {
+            return virtualExecutor("Scan-", maxConcurrency);
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(2);
         executor.setMaxPoolSize(3);
@@ -23,6 +33,36 @@ public class AsyncConfiguration {
         return executor;
     }
 
+    /**
+     * Walks directories for the startup scan and directory events. A walk blocks while the backfill
+     * queue is full, so it runs here rather than on the scan executor that handles single file events.
+     */
+    @Bean(name = "backfillTaskExecutor")
+    public TaskExecutor backfillExecutor(@Value("${ingestion.backfill.walkers}") int walkers) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(walkers);
+        executor.setMaxPoolSize(walkers);
+        executor.setQueueCapacity(500);
+        executor.setThreadNamePrefix("Backfill-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Queues the failed jobs due for a retry. Queueing blocks while the maintenance queue is full,
+     * so it runs here rather than on the scheduler thread shared by the other scheduled tasks.
+     */
+    @Bean(name = "retryTaskExecutor")
+    public TaskExecutor retryExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setThreadNamePrefix("Retry-");
+        executor.initialize();
+        return executor;
+    }
+
     @Bean(name = "watcherTaskExecutor")
     public TaskExecutor watcherExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
@@ -34,19 +74,76 @@ public class AsyncConfiguration {
         return executor;
     }
 
-    @Bean(name = "indexTaskExecutor")
-    public TaskExecutor indexExecutor() {
+    /**
+     * Parses files and splits them into chunks, CPU bound (Tika, OCR). Always runs on platform
+     * threads, the synchronized sections in Tika and PDFBox would pin virtual threads.
+     */
+    @Bean(name = "parseTaskExecutor")
+    public ThreadPoolTaskExecutor parseExecutor(@Value("${ingestion.parse.workers}") int workers,
+                                                @Value("${ingestion.parse.queue-capacity}") int queueCapacity) {
+        return stageExecutor("Parse-", workers, queueCapacity);
+    }
+
+    /**
+     * Classifies and embeds batches of chunks, bound by the LLM and embedding endpoints.
+     */
+    @Bean(name = "enrichTaskExecutor")
+    public TaskExecutor enrichExecutor(@Value("${ingestion.enrich.workers}") int workers,
+                                       @Value("${ingestion.enrich.queue-capacity}") int queueCapacity,
+                                       @Value("${virtual.threads.max-concurrency.enrich}") int maxConcurrency) {
+        if (virtualThreads) {
+            return virtualExecutor("Enrich-", maxConcurrency);
+        }
+        return stageExecutor("Enrich-", workers, queueCapacity);
+    }
+
+    /**
+     * Writes batches of chunks to PostgreSQL and Elasticsearch.
+     */
+    @Bean(name = "writeTaskExecutor")
+    public TaskExecutor writeExecutor(@Value("${ingestion.write.workers}") int workers,
+                                      @Value("${ingestion.write.queue-capacity}") int queueCapacity,
+                                      @Value("${virtual.threads.max-concurrency.write}") int maxConcurrency) {
+        if (virtualThreads) {
+            return virtualExecutor("Write-", maxConcurrency);
+        }
+        return stageExecutor("Write-", workers, queueCapacity);
+    }
+
+    /**
+     * Executor of an ingestion stage. Submitting to a full queue blocks the caller until a slot
+     * frees up, so a slow stage throttles the stages feeding it instead of rejecting work.
+     */
+    private static ThreadPoolTaskExecutor stageExecutor(String threadNamePrefix, int workers, int queueCapacity) {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(1);
-        executor.setMaxPoolSize(2);
-        executor.setQueueCapacity(500);
-        executor.setThreadNamePrefix("Index-");
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Executor " + threadNamePrefix + " is shut down");
+            }
+            try {
+                pool.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for a slot in " + threadNamePrefix, e);
+            }
+        });
+        executor.setWaitForTasksToCompleteOnShutdown(true);
         executor.initialize();
         return executor;
     }
 
-    @Bean
-    public ConcurrentHashMap<String, TaskStatus> taskStatuses() {
-        return new ConcurrentHashMap<>();
+    /**
+     * Starts a virtual thread per task. Once the concurrency limit is reached submitting blocks,
+     * which keeps the backpressure of the bounded stage queues.
+     */
+    private static TaskExecutor virtualExecutor(String threadNamePrefix, int maxConcurrency) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(maxConcurrency);
+        return executor;
     }
 }
@@ -0,0 +1,53 @@
+package net.konjarla.aifilemonitor.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import net.konjarla.aifilemonitor.fileprocessor.ApproximateTextSplitter;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.transformer.splitter.TextSplitter;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Tokenizer backed components are built once: each instance loads its own BPE encoding. The
+ * splitter and the estimator are stateless after construction and shared by all threads.
+ */
+@Configuration
+@Slf4j
+public class ChunkingConfiguration {
+    public enum SplitterMode {
+        // Exact token boundaries, encodes and decodes every chunk
+        TOKEN,
+        // Character based with an estimated number of characters per token
+        APPROXIMATE
+    }
+
+    // Defaults of TokenTextSplitter, shared by both modes
+    public static final int CHUNK_SIZE = 800;
+    public static final int MIN_CHUNK_SIZE_CHARS = 350;
+    public static final int MIN_CHUNK_LENGTH_TO_EMBED = 5;
+    public static final int MAX_NUM_CHUNKS = 10000;
+
+    @Bean
+    public TokenCountEstimator tokenCountEstimator() {
+        return new JTokkitTokenCountEstimator();
+    }
+
+    @Bean
+    public TextSplitter chunkTextSplitter(@Value("${file.chunks.splitter}") SplitterMode mode,
+                                          @Value("${file.chunks.approximate.chars-per-token}") double charsPerToken) {
+        log.info("Chunks are split in {} mode", mode);
+        return createSplitter(mode, charsPerToken);
+    }
+
+    public static TextSplitter createSplitter(SplitterMode mode, double charsPerToken) {
+        return switch (mode) {
+            case TOKEN -> new TokenTextSplitter(CHUNK_SIZE, MIN_CHUNK_SIZE_CHARS, MIN_CHUNK_LENGTH_TO_EMBED,
+                    MAX_NUM_CHUNKS, true);
+            case APPROXIMATE -> new ApproximateTextSplitter(CHUNK_SIZE, charsPerToken, MIN_CHUNK_SIZE_CHARS,
+                    MIN_CHUNK_LENGTH_TO_EMBED, MAX_NUM_CHUNKS);
+        };
+    }
+}
@@ -1,6 +1,9 @@
 package net.konjarla.aifilemonitor.configuration;
 
 import io.micrometer.observation.ObservationRegistry;
+import net.konjarla.aifilemonitor.transport.AdaptiveRateLimiter;
+import net.konjarla.aifilemonitor.transport.DownstreamLimiter.Downstream;
+import net.konjarla.aifilemonitor.transport.OllamaEndpointPool;
 import net.konjarla.aifilemonitor.transport.RestClientInterceptor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
@@ -9,12 +12,12 @@ import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.ollama.OllamaChatModel;
 import org.springframework.ai.ollama.OllamaEmbeddingModel;
 import org.springframework.ai.ollama.api.OllamaApi;
-import org.springframework.ai.ollama.api.OllamaModel;
 import org.springframework.ai.ollama.api.OllamaOptions;
 import org.springframework.ai.ollama.management.ModelManagementOptions;
 import org.springframework.ai.ollama.management.PullModelStrategy;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
 import org.springframework.boot.http.client.ClientHttpRequestFactorySettings;
@@ -27,14 +30,27 @@ import org.springframework.web.client.RestClient;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import java.time.Duration;
+import java.util.List;
 
 import static org.springframework.ai.vectorstore.pgvector.PgVectorStore.PgDistanceType.COSINE_DISTANCE;
 import static org.springframework.ai.vectorstore.pgvector.PgVectorStore.PgIndexType.HNSW;
 
 @Configuration
 public class OllamaConfiguration {
-    @Value("${ollama.host}")
-    private String ollamaHost;
+    @Autowired
+    private AdaptiveRateLimiter adaptiveRateLimiter;
+
+    @Autowired
+    private OllamaEndpointPool ollamaEndpointPool;
+
+    @Value("${ollama.routes.chat}")
+    private List<String> chatHosts;
+
+    @Value("${ollama.routes.photo}")
+    private List<String> photoHosts;
+
+    @Value("${ollama.routes.embedding}")
+    private List<String> embeddingHosts;
 
     @Value("${ollama.chat.model}")
     private String ollamaChatModel;
@@ -42,6 +58,18 @@ public class OllamaConfiguration {
     @Value("${ollama.photo.chat.model}")
     private String ollamaPhotoChatModel;
 
+    @Value("${ollama.embedding.model}")
+    private String ollamaEmbeddingModel;
+
+    @Value("${ollama.keep-alive.chat}")
+    private String chatKeepAlive;
+
+    @Value("${ollama.keep-alive.photo}")
+    private String photoKeepAlive;
+
+    @Value("${ollama.keep-alive.embedding}")
+    private String embeddingKeepAlive;
+
     @Value("${spring.ai.ollama.chat.options.num-ctx}")
     private Integer numCtx;
 
@@ -60,20 +88,42 @@ public class OllamaConfiguration {
     @Value("${file_assistant_classification_system_prompt}")
     private Resource classificationPrompt;
 
+    // One request factory for all Ollama clients, so they share its pool of keep-alive connections per host
     @Bean
-    public OllamaApi ollamaApi() {
-        RestClient.Builder builder = RestClient.builder();
+    public ClientHttpRequestFactory ollamaRequestFactory() {
         ClientHttpRequestFactorySettings settings = ClientHttpRequestFactorySettings
                 .defaults()
                 .withConnectTimeout(Duration.ofSeconds(60))
                 .withReadTimeout(Duration.ofSeconds(300));
-        ClientHttpRequestFactory requestFactory = ClientHttpRequestFactoryBuilder.detect().build(settings);
-        builder.requestFactory(requestFactory)
+        return ClientHttpRequestFactoryBuilder.detect().build(settings);
+    }
+
+    @Bean
+    public OllamaApi ollamaApi() {
+        return ollamaApi("chat", chatHosts);
+    }
+
+    @Bean
+    public OllamaApi photoOllamaApi() {
+        return ollamaApi("photo", photoHosts);
+    }
+
+    @Bean
+    public OllamaApi embeddingOllamaApi() {
+        return ollamaApi("embedding", embeddingHosts);
+    }
+
+    // The base URL is the first host, the route sends each request to the least loaded host
+    private OllamaApi ollamaApi(String route, List<String> hosts) {
+        RestClient.Builder builder = RestClient.builder();
+        builder.requestFactory(ollamaRequestFactory())
+                .requestInterceptor(adaptiveRateLimiter.interceptor(Downstream.OLLAMA))
+                .requestInterceptor(ollamaEndpointPool.route(route, hosts))
                 .requestInterceptor(new RestClientInterceptor());
         WebClient.Builder webClientBuilder = WebClient.builder();
 
         return OllamaApi.builder()
-                .baseUrl(ollamaHost)
+                .baseUrl(hosts.get(0).trim())
                 .restClientBuilder(builder)
                 .webClientBuilder(webClientBuilder).build();
     }
@@ -85,6 +135,7 @@ public class OllamaConfiguration {
                 .defaultOptions(
                         OllamaOptions.builder()
                                 .model(ollamaChatModel)
+                                .keepAlive(chatKeepAlive)
                                 .numCtx(numCtx)
                                 .temperature(ollamaChatTemperature)
                                 .build())
@@ -98,9 +149,10 @@ public class OllamaConfiguration {
                 .pullModelStrategy(PullModelStrategy.WHEN_MISSING)
                 .build();
 
-        return new OllamaEmbeddingModel(ollamaApi(),
+        return new OllamaEmbeddingModel(embeddingOllamaApi(),
                 OllamaOptions.builder()
-                        .model(OllamaModel.MXBAI_EMBED_LARGE.id())
+                        .model(ollamaEmbeddingModel)
+                        .keepAlive(embeddingKeepAlive)
                         .build(), observationRegistry, modelManagementOptions);
     }
 
@@ -131,10 +183,11 @@ public class OllamaConfiguration {
     @Bean
     public ChatModel photoChatModel() {
         return OllamaChatModel.builder()
-                .ollamaApi(ollamaApi())
+                .ollamaApi(photoOllamaApi())
                 .defaultOptions(
                         OllamaOptions.builder()
                                 .model(ollamaPhotoChatModel)
+                                .keepAlive(photoKeepAlive)
                                 .numCtx(numCtx)
                                 .temperature(ollamaChatTemperature)
                                 .build())
@@ -1,5 +1,7 @@
 package net.konjarla.aifilemonitor.configuration;
 
+import net.konjarla.aifilemonitor.transport.AdaptiveRateLimiter;
+import net.konjarla.aifilemonitor.transport.DownstreamLimiter.Downstream;
 import net.konjarla.aifilemonitor.transport.RestClientInterceptor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
@@ -7,6 +9,7 @@ import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
 import org.springframework.boot.http.client.ClientHttpRequestFactorySettings;
@@ -21,6 +24,9 @@ import java.time.Duration;
 
 @Configuration
 public class OpenAiConfiguration {
+    @Autowired
+    private AdaptiveRateLimiter adaptiveRateLimiter;
+
     @Value("${spring.ai.openai.base-url}")
     private String openAiBaseUrl;
 
@@ -48,6 +54,9 @@ public class OpenAiConfiguration {
     @Value("${file_assistant_classification_system_prompt}")
     private Resource classificationPrompt;
 
+    @Value("${file_assistant_batch_classification_system_prompt}")
+    private Resource batchClassificationPrompt;
+
     @Bean
     public OpenAiApi openAiApi() {
 
@@ -58,6 +67,7 @@ public class OpenAiConfiguration {
                 .withReadTimeout(Duration.ofSeconds(300));
         ClientHttpRequestFactory requestFactory = ClientHttpRequestFactoryBuilder.detect().build(settings);
         builder.requestFactory(requestFactory)
+                .requestInterceptor(adaptiveRateLimiter.interceptor(Downstream.OPENAI))
                 .requestInterceptor(new RestClientInterceptor());
         WebClient.Builder webClientBuilder = WebClient.builder();
 
@@ -121,4 +131,12 @@ public class OpenAiConfiguration {
                 .defaultAdvisors( new SimpleLoggerAdvisor())
                 .build();
     }
+
+    @Bean
+    public ChatClient openAiBatchClassificationChatClient() {
+        return ChatClient.builder(openAiChatModel())
+                .defaultSystem(batchClassificationPrompt)
+                .defaultAdvisors( new SimpleLoggerAdvisor())
+                .build();
+    }
 }
@@ -3,14 +3,20 @@ package net.konjarla.aifilemonitor.controller;
 import lombok.AllArgsConstructor;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import net.konjarla.aifilemonitor.database.IngestionJob;
+import net.konjarla.aifilemonitor.monitoring.model.JobState;
+import net.konjarla.aifilemonitor.monitoring.model.TaskRunStatus;
 import net.konjarla.aifilemonitor.monitoring.model.TaskStatus;
+import net.konjarla.aifilemonitor.monitoring.service.IngestionJobService;
 import net.konjarla.aifilemonitor.monitoring.service.TaskService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -20,15 +26,43 @@ import java.util.Map;
 public class TaskController {
     @NonNull
     TaskService taskService;
+    @NonNull
+    IngestionJobService ingestionJobService;
+
     @GetMapping("/{taskId}")
     public ResponseEntity<TaskStatus> getTaskStatus(@PathVariable String taskId) {
         TaskStatus status = taskService.getTaskStatus(taskId);
         return ResponseEntity.ok(status);
     }
 
+    /**
+     * Tasks of this run, pending and running first, then finished ones newest first.
+     */
     @GetMapping("/all")
-    public ResponseEntity<Map<String, Object>> getTaskStatusForAll() {
-        Map<String, Object> status = taskService.getTaskStatusForAllAsync();
-        return ResponseEntity.ok(status);
+    public ResponseEntity<Map<String, Object>> getTaskStatusForAll(@RequestParam(required = false) TaskRunStatus status,
+                                                                   @RequestParam(required = false) String path,
+                                                                   @RequestParam(defaultValue = "0") int page,
+                                                                   @RequestParam(defaultValue = "50") int size) {
+        Map<String, Object> tasks = taskService.getTaskStatusForAllAsync(status, path, Math.max(0, page),
+                Math.min(Math.max(1, size), 500));
+        return ResponseEntity.ok(tasks);
+    }
+
+    /**
+     * Progress of the ingestion as recorded in the job journal, survives restarts.
+     */
+    @GetMapping("/progress")
+    public ResponseEntity<Map<String, Object>> getProgress() {
+        return ResponseEntity.ok(ingestionJobService.getProgress());
+    }
+
+    /**
+     * Journal entries, most recently updated first, optionally only those in the given state.
+     */
+    @GetMapping("/jobs")
+    public ResponseEntity<List<IngestionJob>> getJobs(@RequestParam(required = false) JobState state,
+                                                      @RequestParam(defaultValue = "0") int page,
+                                                      @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(ingestionJobService.getJobs(state, Math.max(0, page), Math.min(Math.max(1, size), 500)));
     }
 }
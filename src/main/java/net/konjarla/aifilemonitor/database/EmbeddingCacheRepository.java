@@ -0,0 +1,62 @@
+package net.konjarla.aifilemonitor.database;
+
+import com.pgvector.PGvector;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent store of embeddings keyed by embedding model and normalized text hash.
+ */
+@Repository
+@RequiredArgsConstructor
+public class EmbeddingCacheRepository {
+    private static final String SELECT_SQL = "SELECT text_hash, embedding::text AS embedding FROM embedding_cache " +
+            "WHERE model_id = ? AND text_hash = ANY (?)";
+    private static final String INSERT_SQL = "INSERT INTO embedding_cache (model_id, text_hash, embedding, created_at) " +
+            "VALUES (?, ?, ?, now()) ON CONFLICT (model_id, text_hash) DO NOTHING";
+    private static final String DELETE_OTHER_MODELS_SQL = "DELETE FROM embedding_cache WHERE model_id <> ?";
+
+    @NonNull
+    private final JdbcTemplate jdbcTemplate;
+
+    public Map<String, float[]> findAll(String modelId, List<String> textHashes) {
+        Map<String, float[]> embeddings = new HashMap<>();
+        if (textHashes.isEmpty()) {
+            return embeddings;
+        }
+        jdbcTemplate.query(SELECT_SQL, ps -> {
+            ps.setString(1, modelId);
+            ps.setArray(2, ps.getConnection().createArrayOf("varchar", textHashes.toArray()));
+        }, rs -> {
+            embeddings.put(rs.getString("text_hash"), new PGvector(rs.getString("embedding")).toArray());
+        });
+        return embeddings;
+    }
+
+    public void saveAll(String modelId, Map<String, float[]> embeddings) {
+        if (embeddings.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, float[]>> entries = new ArrayList<>(embeddings.entrySet());
+        jdbcTemplate.batchUpdate(INSERT_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setString(1, modelId);
+            ps.setString(2, entry.getKey());
+            ps.setObject(3, new PGvector(entry.getValue()));
+        });
+    }
+
+    /**
+     * Removes the embeddings produced by any model other than the given one.
+     * @return The number of removed entries
+     */
+    public int deleteOtherModels(String modelId) {
+        return jdbcTemplate.update(DELETE_OTHER_MODELS_SQL, modelId);
+    }
+}
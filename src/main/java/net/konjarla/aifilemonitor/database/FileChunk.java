@@ -25,6 +25,8 @@ public class FileChunk {
 
     @Column(name = "content", columnDefinition = "TEXT")
     private String content;
+    @Column(name = "content_hash", length = 64)
+    private String contentHash; // SHA-256 hash of the chunk text
     @Column(name = "metadata", columnDefinition = "jsonb")
     @JdbcTypeCode(SqlTypes.JSON)
     private Map<String, Object> metadata;
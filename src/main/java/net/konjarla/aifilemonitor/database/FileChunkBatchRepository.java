@@ -0,0 +1,94 @@
+package net.konjarla.aifilemonitor.database;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Writes chunks of a file, including their embeddings, with JDBC batches.
+ * Combined with {@code reWriteBatchedInserts=true} on the datasource URL the driver
+ * turns each batch into multi-row inserts.
+ */
+@Repository
+@RequiredArgsConstructor
+public class FileChunkBatchRepository {
+    private static final String INSERT_SQL = "INSERT INTO file_chunks " +
+            "(id, chunk_index, content, content_hash, metadata, embedding, file_path, file_name, file_extension, " +
+            "last_indexed, created_at, modified_at, file_id) " +
+            "VALUES (?, ?, ?, ?, CAST(? AS jsonb), ?, ?, ?, ?, ?, now(), now(), ?)";
+    // Merges the file level metadata into the stored one, keeping chunk level keys such as the classification
+    private static final String UPDATE_RETAINED_SQL = "UPDATE file_chunks " +
+            "SET chunk_index = ?, metadata = coalesce(metadata, '{}'::jsonb) || CAST(? AS jsonb), " +
+            "last_indexed = ?, modified_at = now() WHERE id = ?";
+    private static final String UPDATE_CHECKSUM_SQL = "UPDATE file_chunks " +
+            "SET metadata = coalesce(metadata, '{}'::jsonb) || jsonb_build_object('checksum', CAST(? AS text)) " +
+            "WHERE file_id = ?";
+
+    @NonNull
+    private final JdbcTemplate jdbcTemplate;
+    @NonNull
+    private final ObjectMapper objectMapper;
+
+    public void insertAll(List<FileChunk> fileChunks, int batchSize) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, fileChunks, batchSize, (ps, fileChunk) -> {
+            ps.setString(1, fileChunk.getId());
+            ps.setObject(2, fileChunk.getChunkIndex(), Types.INTEGER);
+            ps.setString(3, fileChunk.getContent());
+            ps.setString(4, fileChunk.getContentHash());
+            ps.setString(5, toJson(fileChunk));
+            if (fileChunk.getEmbedding() != null) {
+                ps.setObject(6, new PGvector(fileChunk.getEmbedding()));
+            } else {
+                ps.setNull(6, Types.OTHER);
+            }
+            ps.setString(7, fileChunk.getFilePath());
+            ps.setString(8, fileChunk.getFileName());
+            ps.setString(9, fileChunk.getFileExtension());
+            ps.setTimestamp(10, toTimestamp(fileChunk));
+            ps.setString(11, fileChunk.getFileItem() != null ? fileChunk.getFileItem().getId() : null);
+        });
+    }
+
+    /**
+     * Updates the position and file level metadata of chunks whose content did not change.
+     */
+    public void updateRetained(List<FileChunk> fileChunks, int batchSize) {
+        jdbcTemplate.batchUpdate(UPDATE_RETAINED_SQL, fileChunks, batchSize, (ps, fileChunk) -> {
+            ps.setObject(1, fileChunk.getChunkIndex(), Types.INTEGER);
+            ps.setString(2, toJson(fileChunk));
+            ps.setTimestamp(3, toTimestamp(fileChunk));
+            ps.setString(4, fileChunk.getId());
+        });
+    }
+
+    /**
+     * Sets the checksum of the file on all its chunks, used when the checksum is only known
+     * after the chunks were written.
+     */
+    public int updateChecksum(String fileId, String checksum) {
+        return jdbcTemplate.update(UPDATE_CHECKSUM_SQL, checksum, fileId);
+    }
+
+    private Timestamp toTimestamp(FileChunk fileChunk) {
+        return fileChunk.getLastIndexed() != null ? Timestamp.valueOf(fileChunk.getLastIndexed()) : null;
+    }
+
+    private String toJson(FileChunk fileChunk) {
+        if (fileChunk.getMetadata() == null) {
+            return "{}";
+        }
+        try {
+            return objectMapper.writeValueAsString(fileChunk.getMetadata());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize metadata of chunk " + fileChunk.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package net.konjarla.aifilemonitor.database;
+
+import java.util.Map;
+
+/**
+ * Projection of a stored chunk used to diff the chunks of a re-indexed file.
+ */
+public interface FileChunkHash {
+    String getId();
+    String getContentHash();
+    Map<String, Object> getMetadata();
+}
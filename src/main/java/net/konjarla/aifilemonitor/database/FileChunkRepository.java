@@ -12,14 +12,11 @@ import java.util.List;
 public interface FileChunkRepository extends JpaRepository<FileChunk, String> {
     List<FileChunk> findByFileItem(FileItem fileItem);
 
+    List<FileChunkHash> findByFileItemId(String fileId);
+
     @Modifying
     @Query("update FileChunk u SET u.chunkIndex = :chunkIndex, u.fileItem = :fileItem where u.id = :id")
     void updateChunk(@Param(value = "id") String id,
                      @Param(value = "chunkIndex") Integer chunkIndex,
                      @Param(value = "fileItem") FileItem fileItem);
-
-    @Modifying
-    @Query(value = "update file_chunks SET embedding = :embedding where id = :id", nativeQuery = true)
-    void updateEmbedding(@Param(value = "id") String id,
-                     @Param(value = "embedding") float[] embedding);
 } 
\ No newline at end of file
@@ -61,6 +61,12 @@ public class FileItem {
     private String permissions; // e.g., "rwxr-xr-x"
 
     private LocalDateTime lastIndexed;
+    @Column(name = "page_count")
+    private Integer pageCount;
+    // 1-based numbers of the PDF pages whose text was recognized by OCR
+    @Column(name = "ocr_pages", columnDefinition = "jsonb")
+    @JdbcTypeCode(SqlTypes.JSON)
+    private List<Integer> ocrPages;
     @Column(name = "is_sensitive", columnDefinition = "boolean default false")
     private Boolean isSensitive;
     @Column(name = "sensitive_reason", columnDefinition = "jsonb")
@@ -26,6 +26,8 @@ public class FileItemDTO {
     private String groupName;
     private String permissions;
     private LocalDateTime lastIndexed;
+    private Integer pageCount;
+    private List<Integer> ocrPages;
     private Boolean isSensitive;
     private Map<String, Object> sensitiveReason;
     private Instant created;
@@ -0,0 +1,100 @@
+package net.konjarla.aifilemonitor.database;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import net.konjarla.aifilemonitor.tools.model.FileClassification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongConsumer;
+
+/**
+ * Persistent store of image perceptual hashes with the description and classifications the
+ * vision model gave the image, keyed by the checksum of the image file.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ImageHashRepository {
+    private static final String SELECT_HASHES_SQL = "SELECT checksum, dhash FROM image_hashes " +
+            "WHERE model_id = ? AND checksum > ? ORDER BY checksum LIMIT ?";
+    private static final String SELECT_BY_HASH_SQL = "SELECT description, classifications::text AS classifications " +
+            "FROM image_hashes WHERE model_id = ? AND dhash = ? LIMIT 1";
+    private static final String INSERT_SQL = "INSERT INTO image_hashes " +
+            "(checksum, dhash, model_id, description, classifications, created_at) " +
+            "VALUES (?, ?, ?, ?, CAST(? AS jsonb), now()) ON CONFLICT (checksum) DO UPDATE " +
+            "SET dhash = EXCLUDED.dhash, model_id = EXCLUDED.model_id, description = EXCLUDED.description, " +
+            "classifications = EXCLUDED.classifications, created_at = EXCLUDED.created_at";
+    private static final String DELETE_OTHER_MODELS_SQL = "DELETE FROM image_hashes WHERE model_id <> ?";
+    private static final TypeReference<List<String>> STRING_LIST = new TypeReference<>() {
+    };
+
+    @NonNull
+    private final JdbcTemplate jdbcTemplate;
+    @NonNull
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Passes every stored hash of the model to the consumer, reading them in pages so the
+     * whole table is never held in memory at once.
+     * @return The number of hashes read
+     */
+    public int forEachHash(String modelId, int pageSize, LongConsumer consumer) {
+        int count = 0;
+        String after = "";
+        while (true) {
+            String[] last = {null};
+            int[] read = {0};
+            jdbcTemplate.query(SELECT_HASHES_SQL, rs -> {
+                consumer.accept(rs.getLong("dhash"));
+                last[0] = rs.getString("checksum");
+                read[0]++;
+            }, modelId, after, pageSize);
+            count += read[0];
+            if (read[0] < pageSize) {
+                return count;
+            }
+            after = last[0];
+        }
+    }
+
+    public Optional<FileClassification> findByHash(String modelId, long hash) {
+        return jdbcTemplate.query(SELECT_BY_HASH_SQL, (rs, rowNum) -> FileClassification.builder()
+                .text(rs.getString("description"))
+                .classifications(fromJson(rs.getString("classifications")))
+                .build(), modelId, hash).stream().findFirst();
+    }
+
+    public void save(String checksum, long hash, String modelId, FileClassification classification) {
+        jdbcTemplate.update(INSERT_SQL, checksum, hash, modelId, classification.getText(),
+                toJson(classification.getClassifications()));
+    }
+
+    /**
+     * Removes the entries described by any model other than the given one.
+     * @return The number of removed entries
+     */
+    public int deleteOtherModels(String modelId) {
+        return jdbcTemplate.update(DELETE_OTHER_MODELS_SQL, modelId);
+    }
+
+    private String toJson(List<String> classifications) {
+        try {
+            return classifications != null ? objectMapper.writeValueAsString(classifications) : null;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize image classifications", e);
+        }
+    }
+
+    private List<String> fromJson(String classifications) {
+        try {
+            return classifications != null ? objectMapper.readValue(classifications, STRING_LIST) : null;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not read image classifications", e);
+        }
+    }
+}
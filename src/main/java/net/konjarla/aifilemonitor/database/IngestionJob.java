@@ -0,0 +1,32 @@
+package net.konjarla.aifilemonitor.database;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import net.konjarla.aifilemonitor.monitoring.model.JobState;
+import net.konjarla.aifilemonitor.monitoring.model.TaskPriority;
+
+import java.time.Instant;
+
+/**
+ * Journal entry of the ingestion of one file, a row of the {@code ingestion_jobs} table.
+ */
+@Getter
+@Builder
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IngestionJob {
+    private final String filePath;
+    private final String taskId;
+    private final JobState state;
+    private final TaskPriority priority;
+    private final int attempts;
+    private final String lastError;
+    private final Instant nextAttemptAt;
+    private final Instant createdAt;
+    private final Instant updatedAt;
+    private final Instant completedAt;
+    // Modification time of the file when its last parse started
+    private final Instant sourceModifiedAt;
+}
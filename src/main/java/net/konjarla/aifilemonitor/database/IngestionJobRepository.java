@@ -0,0 +1,158 @@
+package net.konjarla.aifilemonitor.database;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import net.konjarla.aifilemonitor.monitoring.model.JobState;
+import net.konjarla.aifilemonitor.monitoring.model.TaskPriority;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Journal of file ingestion jobs, one row per file path. State changes are single row updates,
+ * so the journal adds a few cheap statements per file.
+ */
+@Repository
+@RequiredArgsConstructor
+public class IngestionJobRepository {
+    private static final String COLUMNS = "file_path, task_id, state, priority, attempts, last_error, " +
+            "next_attempt_at, created_at, updated_at, completed_at, source_modified_at";
+    // A file queued again after it was done starts over with no attempts
+    private static final String QUEUE_SQL = "INSERT INTO ingestion_jobs " +
+            "(file_path, task_id, state, priority, attempts, created_at, updated_at) " +
+            "VALUES (?, ?, 'QUEUED', ?, 0, now(), now()) ON CONFLICT (file_path) DO UPDATE " +
+            "SET task_id = EXCLUDED.task_id, state = 'QUEUED', priority = EXCLUDED.priority, " +
+            "attempts = CASE WHEN ingestion_jobs.state = 'DONE' THEN 0 ELSE ingestion_jobs.attempts END, " +
+            "updated_at = now()";
+    private static final String UPDATE_STATE_SQL = "UPDATE ingestion_jobs SET state = ?, updated_at = now() " +
+            "WHERE file_path = ?";
+    private static final String PARSING_SQL = "UPDATE ingestion_jobs SET state = 'PARSING', source_modified_at = ?, " +
+            "updated_at = now() WHERE file_path = ?";
+    private static final String DONE_SQL = "UPDATE ingestion_jobs SET state = 'DONE', last_error = NULL, " +
+            "next_attempt_at = NULL, updated_at = now(), completed_at = now() WHERE file_path = ?";
+    // The backoff doubles with each attempt, from the base up to the maximum, in seconds
+    private static final String FAILED_SQL = "UPDATE ingestion_jobs SET state = 'FAILED', attempts = attempts + 1, " +
+            "last_error = ?, next_attempt_at = now() + least(? * power(2, attempts), ?) * interval '1 second', " +
+            "updated_at = now() WHERE file_path = ?";
+    private static final String DELETE_SQL = "DELETE FROM ingestion_jobs WHERE file_path = ?";
+    private static final String SELECT_BY_TASK_ID_SQL = "SELECT " + COLUMNS + " FROM ingestion_jobs WHERE task_id = ?";
+    private static final String SELECT_DUE_RETRIES_SQL = "SELECT " + COLUMNS + " FROM ingestion_jobs " +
+            "WHERE state = 'FAILED' AND attempts < ? AND next_attempt_at <= now() ORDER BY next_attempt_at LIMIT ?";
+    private static final String SELECT_PAGE_AFTER_SQL = "SELECT " + COLUMNS + " FROM ingestion_jobs " +
+            "WHERE file_path > ? ORDER BY file_path LIMIT ?";
+    private static final String SELECT_UNFINISHED_AFTER_SQL = "SELECT " + COLUMNS + " FROM ingestion_jobs " +
+            "WHERE state IN ('QUEUED', 'PARSING', 'EMBEDDING') AND file_path > ? ORDER BY file_path LIMIT ?";
+    private static final String SELECT_PAGE_SQL = "SELECT " + COLUMNS + " FROM ingestion_jobs " +
+            "ORDER BY updated_at DESC LIMIT ? OFFSET ?";
+    private static final String SELECT_STATE_PAGE_SQL = "SELECT " + COLUMNS + " FROM ingestion_jobs " +
+            "WHERE state = ? ORDER BY updated_at DESC LIMIT ? OFFSET ?";
+    private static final String COUNT_BY_STATE_SQL = "SELECT state, count(*) AS jobs FROM ingestion_jobs GROUP BY state";
+
+    private static final RowMapper<IngestionJob> ROW_MAPPER = (rs, rowNum) -> IngestionJob.builder()
+            .filePath(rs.getString("file_path"))
+            .taskId(rs.getString("task_id"))
+            .state(JobState.valueOf(rs.getString("state")))
+            .priority(TaskPriority.valueOf(rs.getString("priority")))
+            .attempts(rs.getInt("attempts"))
+            .lastError(rs.getString("last_error"))
+            .nextAttemptAt(toInstant(rs.getTimestamp("next_attempt_at")))
+            .createdAt(toInstant(rs.getTimestamp("created_at")))
+            .updatedAt(toInstant(rs.getTimestamp("updated_at")))
+            .completedAt(toInstant(rs.getTimestamp("completed_at")))
+            .sourceModifiedAt(toInstant(rs.getTimestamp("source_modified_at")))
+            .build();
+
+    @NonNull
+    private final JdbcTemplate jdbcTemplate;
+
+    public void queue(String filePath, String taskId, TaskPriority priority) {
+        jdbcTemplate.update(QUEUE_SQL, filePath, taskId, priority.name());
+    }
+
+    public void updateState(String filePath, JobState state) {
+        jdbcTemplate.update(UPDATE_STATE_SQL, state.name(), filePath);
+    }
+
+    public void parsing(String filePath, Instant sourceModifiedAt) {
+        jdbcTemplate.update(PARSING_SQL, Timestamp.from(sourceModifiedAt), filePath);
+    }
+
+    public void done(String filePath) {
+        jdbcTemplate.update(DONE_SQL, filePath);
+    }
+
+    public void failed(String filePath, String error, long backoffBaseSeconds, long backoffMaxSeconds) {
+        jdbcTemplate.update(FAILED_SQL, error, backoffBaseSeconds, backoffMaxSeconds, filePath);
+    }
+
+    public void delete(String filePath) {
+        jdbcTemplate.update(DELETE_SQL, filePath);
+    }
+
+    public Optional<IngestionJob> findByTaskId(String taskId) {
+        return jdbcTemplate.query(SELECT_BY_TASK_ID_SQL, ROW_MAPPER, taskId).stream().findFirst();
+    }
+
+    public List<IngestionJob> findDueRetries(int maxAttempts, int limit) {
+        return jdbcTemplate.query(SELECT_DUE_RETRIES_SQL, ROW_MAPPER, maxAttempts, limit);
+    }
+
+    /**
+     * Passes every job to the consumer, reading them in pages ordered by file path.
+     */
+    public void forEach(int pageSize, Consumer<IngestionJob> consumer) {
+        forEachPage(SELECT_PAGE_AFTER_SQL, pageSize, consumer);
+    }
+
+    /**
+     * Passes the jobs that were queued or running when the application stopped to the consumer.
+     */
+    public void forEachUnfinished(int pageSize, Consumer<IngestionJob> consumer) {
+        forEachPage(SELECT_UNFINISHED_AFTER_SQL, pageSize, consumer);
+    }
+
+    /**
+     * @param state Only jobs in this state, all jobs if {@code null}
+     * @return The most recently updated jobs first
+     */
+    public List<IngestionJob> findPage(JobState state, int offset, int limit) {
+        return state != null
+                ? jdbcTemplate.query(SELECT_STATE_PAGE_SQL, ROW_MAPPER, state.name(), limit, offset)
+                : jdbcTemplate.query(SELECT_PAGE_SQL, ROW_MAPPER, limit, offset);
+    }
+
+    public Map<JobState, Long> countByState() {
+        Map<JobState, Long> counts = new LinkedHashMap<>();
+        for (JobState state : JobState.values()) {
+            counts.put(state, 0L);
+        }
+        jdbcTemplate.query(COUNT_BY_STATE_SQL, rs -> {
+            counts.put(JobState.valueOf(rs.getString("state")), rs.getLong("jobs"));
+        });
+        return counts;
+    }
+
+    private void forEachPage(String sql, int pageSize, Consumer<IngestionJob> consumer) {
+        String after = "";
+        while (true) {
+            List<IngestionJob> page = jdbcTemplate.query(sql, ROW_MAPPER, after, pageSize);
+            page.forEach(consumer);
+            if (page.size() < pageSize) {
+                return;
+            }
+            after = page.get(page.size() - 1).getFilePath();
+        }
+    }
+
+    private static Instant toInstant(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toInstant() : null;
+    }
+}
@@ -1,29 +1,84 @@
 package net.konjarla.aifilemonitor.database.service;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.konjarla.aifilemonitor.database.FileChunk;
+import net.konjarla.aifilemonitor.database.FileChunkBatchRepository;
+import net.konjarla.aifilemonitor.database.FileChunkHash;
 import net.konjarla.aifilemonitor.database.FileChunkRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class FileChunkService {
     @NonNull
     private final FileChunkRepository fileChunkRepository;
+    @NonNull
+    private final FileChunkBatchRepository fileChunkBatchRepository;
+    @NonNull
+    private final MeterRegistry meterRegistry;
 
+    @Value("${file.chunks.insert.batch-size}")
+    private Integer insertBatchSize;
+
+    /**
+     * Inserts a batch of chunks together with their embeddings in one transaction.
+     * @param fileChunks The chunks to insert
+     */
     @Transactional
-    public void addFileChunk(FileChunk fileChunk) {
-       fileChunkRepository.save(fileChunk);
-       fileChunkRepository.flush();
+    public void addFileChunks(List<FileChunk> fileChunks) {
+        if (fileChunks.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        fileChunkBatchRepository.insertAll(fileChunks, insertBatchSize);
+        long elapsed = System.nanoTime() - start;
+        double rowsPerSecond = fileChunks.size() / Math.max(elapsed / 1_000_000_000d, 1e-9);
+        meterRegistry.timer("file.chunks.insert").record(elapsed, TimeUnit.NANOSECONDS);
+        meterRegistry.counter("file.chunks.insert.rows").increment(fileChunks.size());
+        DistributionSummary.builder("file.chunks.insert.throughput")
+                .baseUnit("rows/s")
+                .register(meterRegistry)
+                .record(rowsPerSecond);
+        log.info("Inserted {} chunks in {} ms ({} rows/s)", fileChunks.size(),
+                TimeUnit.NANOSECONDS.toMillis(elapsed), Math.round(rowsPerSecond));
     }
 
+    /**
+     * Applies a batch of the result of indexing a file: inserts new chunks, refreshes unchanged ones
+     * and deletes the ones no longer present, in one transaction per batch. The batches of a file
+     * commit on their own; the file entry gets its checksum only after the last one, which marks
+     * the file as complete in place of a single transaction.
+     * @param addedChunks Chunks to insert
+     * @param retainedChunks Unchanged chunks with their new index and file level metadata
+     * @param staleChunkIds Ids of the chunks to delete
+     */
     @Transactional
-    public void updateEmbedding(String id, float[] embedding) {
-        fileChunkRepository.updateEmbedding(id, embedding);
-        fileChunkRepository.flush();
+    public void saveFileChunks(List<FileChunk> addedChunks, List<FileChunk> retainedChunks, List<String> staleChunkIds) {
+        if (!staleChunkIds.isEmpty()) {
+            fileChunkRepository.deleteAllByIdInBatch(staleChunkIds);
+        }
+        if (!retainedChunks.isEmpty()) {
+            fileChunkBatchRepository.updateRetained(retainedChunks, insertBatchSize);
+        }
+        addFileChunks(addedChunks);
+    }
+
+    @Transactional
+    public void updateChecksum(String fileId, String checksum) {
+        fileChunkBatchRepository.updateChecksum(fileId, checksum);
+    }
+
+    public List<FileChunkHash> findChunkHashes(String fileId) {
+        return fileChunkRepository.findByFileItemId(fileId);
     }
 }
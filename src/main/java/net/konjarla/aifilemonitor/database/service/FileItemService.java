@@ -84,6 +84,8 @@ public class FileItemService {
         dto.setGroupName(fileItem.getGroupName());
         dto.setPermissions(fileItem.getPermissions());
         dto.setLastIndexed(fileItem.getLastIndexed());
+        dto.setPageCount(fileItem.getPageCount());
+        dto.setOcrPages(fileItem.getOcrPages());
         dto.setIsSensitive(fileItem.getIsSensitive());
         dto.setSensitiveReason(fileItem.getSensitiveReason());
         dto.setCreated(fileItem.getCreated());
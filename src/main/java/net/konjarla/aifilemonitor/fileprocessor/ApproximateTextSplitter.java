@@ -0,0 +1,80 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import org.springframework.ai.transformer.splitter.TextSplitter;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits text like {@link TokenTextSplitter}, but measures chunks in characters using an
+ * estimated number of characters per token instead of encoding and decoding the text. Chunks
+ * end at the last sentence or line end past {@code minChunkSizeChars}, otherwise at the last
+ * whitespace, so they come out close to the token splitter's without running the tokenizer.
+ * Stateless and thread safe.
+ */
+public class ApproximateTextSplitter extends TextSplitter {
+    private final int chunkChars;
+    private final int minChunkSizeChars;
+    private final int minChunkLengthToEmbed;
+    private final int maxNumChunks;
+
+    /**
+     * @param chunkSize Target chunk size in tokens
+     * @param charsPerToken Estimated number of characters per token
+     * @param minChunkSizeChars Minimum chunk length before a sentence end is used as the chunk end
+     * @param minChunkLengthToEmbed Chunks this short or shorter are dropped
+     * @param maxNumChunks Number of chunks after which the rest of the text becomes the last chunk
+     */
+    public ApproximateTextSplitter(int chunkSize, double charsPerToken, int minChunkSizeChars,
+                                   int minChunkLengthToEmbed, int maxNumChunks) {
+        this.chunkChars = Math.max(1, (int) Math.round(chunkSize * charsPerToken));
+        this.minChunkSizeChars = minChunkSizeChars;
+        this.minChunkLengthToEmbed = minChunkLengthToEmbed;
+        this.maxNumChunks = maxNumChunks;
+    }
+
+    @Override
+    protected List<String> splitText(String text) {
+        List<String> chunks = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return chunks;
+        }
+        int start = 0;
+        int length = text.length();
+        while (start < length && chunks.size() < maxNumChunks) {
+            int end = Math.min(length, start + chunkChars);
+            if (end < length) {
+                end = chunkEnd(text, start, end);
+            }
+            String chunk = text.substring(start, end).trim();
+            if (chunk.length() > minChunkLengthToEmbed) {
+                chunks.add(chunk);
+            }
+            start = end;
+        }
+        if (start < length) {
+            String rest = text.substring(start).trim();
+            if (rest.length() > minChunkLengthToEmbed) {
+                chunks.add(rest);
+            }
+        }
+        return chunks;
+    }
+
+    // Prefers the last sentence or line end past minChunkSizeChars, then the last whitespace
+    private int chunkEnd(String text, int start, int end) {
+        for (int i = end - 1; i >= start + minChunkSizeChars; i--) {
+            char c = text.charAt(i);
+            if (c == '.' || c == '?' || c == '!' || c == '\n') {
+                return i + 1;
+            }
+        }
+        for (int i = end - 1; i > start; i--) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,189 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.konjarla.aifilemonitor.llm.LlmService;
+import net.konjarla.aifilemonitor.tools.model.FileClassification;
+import net.konjarla.aifilemonitor.transport.DownstreamErrors;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Classifies the chunks of a file with the mode configured for its MIME type.
+ * <ul>
+ *     <li>{@link Mode#CHUNK} sends one request per chunk.</li>
+ *     <li>{@link Mode#BATCH} packs several chunks into one request, bounded by the prompt
+ *     token budget and by the completion tokens the model may return. A batch whose response is
+ *     malformed or incomplete is classified chunk by chunk; an unavailable endpoint fails the file.</li>
+ *     <li>{@link Mode#DOCUMENT} classifies the head of the file once and applies the labels to every chunk.</li>
+ * </ul>
+ * A file written in several batches is classified in {@link Mode#DOCUMENT} mode by its writer, which calls
+ * {@link #classifyDocument(List)} once with its first chunks and reuses the labels for the later batches.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ChunkClassifier {
+    public enum Mode {
+        CHUNK,
+        BATCH,
+        DOCUMENT
+    }
+
+    @NonNull
+    private final LlmService llmService;
+    @NonNull
+    private final TokenCountEstimator tokenCountEstimator;
+
+    @Value("${classification.mode.default}")
+    private Mode defaultMode;
+
+    @Value("${classification.mode.overrides}")
+    private List<String> modeOverrides;
+
+    @Value("${classification.batch.max-chunks}")
+    private Integer maxBatchChunks;
+
+    @Value("${classification.batch.max-input-tokens}")
+    private Integer maxInputTokens;
+
+    @Value("${classification.batch.output-tokens-per-chunk}")
+    private Integer outputTokensPerChunk;
+
+    @Value("${spring.ai.openai.chat.options.maxCompletionTokens}")
+    private Integer maxCompletionTokens;
+
+    private volatile Map<String, Mode> modesByMimeType;
+
+    /**
+     * Classifies the given chunk texts.
+     * @param mimeType The MIME type of the file the chunks belong to
+     * @param texts The chunk texts
+     * @return The classifications of each chunk, in order
+     */
+    public List<List<String>> classify(String mimeType, List<String> texts) {
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+        Mode mode = modeFor(mimeType);
+        log.info("Classifying {} chunks of type {} in {} mode", texts.size(), mimeType, mode);
+        return switch (mode) {
+            case CHUNK -> texts.stream().map(this::classifyOne).toList();
+            case BATCH -> classifyBatches(texts);
+            case DOCUMENT -> Collections.nCopies(texts.size(), classifyDocument(texts));
+        };
+    }
+
+    /**
+     * Classifies a document by its head, as many of the leading texts as fit the prompt token budget.
+     * @param texts The leading chunk texts of the document
+     * @return The classifications of the document
+     */
+    public List<String> classifyDocument(List<String> texts) {
+        StringBuilder head = new StringBuilder();
+        int tokens = 0;
+        for (String text : texts) {
+            int textTokens = tokenCountEstimator.estimate(text);
+            if (!head.isEmpty() && tokens + textTokens > maxInputTokens) {
+                break;
+            }
+            head.append(text).append("\n");
+            tokens += textTokens;
+        }
+        return classifyOne(head.toString());
+    }
+
+    Mode modeFor(String mimeType) {
+        if (mimeType == null) {
+            return defaultMode;
+        }
+        Map<String, Mode> modes = getModesByMimeType();
+        String baseType = mimeType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        Mode mode = modes.get(baseType);
+        if (mode == null) {
+            mode = modes.get(baseType.split("/", 2)[0] + "/*");
+        }
+        return mode != null ? mode : defaultMode;
+    }
+
+    private List<List<String>> classifyBatches(List<String> texts) {
+        // The completion has to fit every result of a batch
+        int maxChunks = Math.max(1, Math.min(maxBatchChunks, maxCompletionTokens / outputTokensPerChunk));
+        List<List<String>> classifications = new ArrayList<>(texts.size());
+        int start = 0;
+        int batchTokens = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            int tokens = tokenCountEstimator.estimate(texts.get(i));
+            boolean batchFull = i - start >= maxChunks || batchTokens + tokens > maxInputTokens;
+            if (i > start && batchFull) {
+                classifications.addAll(classifyBatch(texts.subList(start, i)));
+                start = i;
+                batchTokens = 0;
+            }
+            batchTokens += tokens;
+        }
+        classifications.addAll(classifyBatch(texts.subList(start, texts.size())));
+        return classifications;
+    }
+
+    private List<List<String>> classifyBatch(List<String> batch) {
+        if (batch.size() == 1) {
+            return List.of(classifyOne(batch.get(0)));
+        }
+        List<FileClassification> results;
+        try {
+            results = llmService.classifyTexts(batch);
+        } catch (RuntimeException e) {
+            if (DownstreamErrors.isUnavailable(e)) {
+                // One request per chunk would only add load to an endpoint that is down or rate limited
+                throw e;
+            }
+            log.warn("Batch classification of {} chunks failed, classifying one by one", batch.size(), e);
+            return batch.stream().map(this::classifyOne).toList();
+        }
+        List<List<String>> classifications = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            FileClassification result = results.get(i);
+            if (result == null || result.getClassifications() == null) {
+                // The model skipped this index
+                log.debug("No classification for chunk {} of batch, classifying it alone", i);
+                classifications.add(classifyOne(batch.get(i)));
+            } else {
+                classifications.add(result.getClassifications());
+            }
+        }
+        return classifications;
+    }
+
+    private List<String> classifyOne(String text) {
+        FileClassification classification = llmService.classifyText(text);
+        return classification.getClassifications() != null ? classification.getClassifications() : List.of();
+    }
+
+    private Map<String, Mode> getModesByMimeType() {
+        if (modesByMimeType == null) {
+            Map<String, Mode> modes = new HashMap<>();
+            modeOverrides.stream()
+                    .map(String::trim)
+                    .filter(override -> override.contains("="))
+                    .forEach(override -> {
+                        String[] parts = override.split("=", 2);
+                        modes.put(parts[0].trim().toLowerCase(Locale.ROOT),
+                                Mode.valueOf(parts[1].trim().toUpperCase(Locale.ROOT)));
+                    });
+            log.debug("Classification mode overrides :: {}", Arrays.toString(modes.entrySet().toArray()));
+            modesByMimeType = modes;
+        }
+        return modesByMimeType;
+    }
+}
@@ -0,0 +1,124 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.konjarla.aifilemonitor.transport.DownstreamErrors;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embeds the chunks of a file with the batch {@link EmbeddingModel#embed(List)} API.
+ * Batches are bounded by a maximum number of texts and by an estimated token budget.
+ * A batch whose input is rejected (a 4xx response, e.g. a text over the context length) is split
+ * in half and retried until the failure is isolated to a single text, whose embedding is then
+ * reported as {@code null}. Any other failure, such as the endpoint being unreachable, rate
+ * limited or failing with a 5xx response, is thrown so the file fails and is retried later. Texts already known to
+ * the {@link EmbeddingCache}, or repeated within the same call, are embedded only once.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ChunkEmbedder {
+    @NonNull
+    private final EmbeddingModel embeddingModel;
+    @NonNull
+    private final EmbeddingCache embeddingCache;
+    @NonNull
+    private final TokenCountEstimator tokenCountEstimator;
+
+    @Value("${embedding.batch.max-size}")
+    private Integer maxBatchSize;
+
+    @Value("${embedding.batch.max-tokens}")
+    private Integer maxBatchTokens;
+
+    /**
+     * Embeds the given texts, preserving their order.
+     * @param texts The texts to embed
+     * @return One embedding per text, {@code null} for texts that could not be embedded
+     */
+    public List<float[]> embed(List<String> texts) {
+        List<String> keys = texts.stream().map(EmbeddingCache::key).toList();
+        Map<String, float[]> cached = embeddingCache.getAll(keys);
+
+        // Embed each distinct uncached text once
+        Map<String, String> uncached = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (!cached.containsKey(keys.get(i))) {
+                uncached.putIfAbsent(keys.get(i), texts.get(i));
+            }
+        }
+        List<String> uncachedKeys = new ArrayList<>(uncached.keySet());
+        List<float[]> computed = embedUncached(new ArrayList<>(uncached.values()));
+        Map<String, float[]> fresh = new HashMap<>();
+        for (int i = 0; i < uncachedKeys.size(); i++) {
+            if (computed.get(i) != null) {
+                fresh.put(uncachedKeys.get(i), computed.get(i));
+            }
+        }
+        embeddingCache.putAll(fresh);
+        log.debug("Embeddings :: {} requested, {} computed", texts.size(), fresh.size());
+
+        List<float[]> embeddings = new ArrayList<>(texts.size());
+        for (String key : keys) {
+            embeddings.add(cached.containsKey(key) ? cached.get(key) : fresh.get(key));
+        }
+        return embeddings;
+    }
+
+    private List<float[]> embedUncached(List<String> texts) {
+        float[][] embeddings = new float[texts.size()][];
+        int start = 0;
+        int batchTokens = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            int tokens = tokenCountEstimator.estimate(texts.get(i));
+            boolean batchFull = i - start >= maxBatchSize || batchTokens + tokens > maxBatchTokens;
+            if (i > start && batchFull) {
+                embedBatch(texts, start, i, embeddings);
+                start = i;
+                batchTokens = 0;
+            }
+            batchTokens += tokens;
+        }
+        if (start < texts.size()) {
+            embedBatch(texts, start, texts.size(), embeddings);
+        }
+        return Arrays.asList(embeddings);
+    }
+
+    private void embedBatch(List<String> texts, int from, int to, float[][] embeddings) {
+        List<String> batch = new ArrayList<>(texts.subList(from, to));
+        try {
+            List<float[]> result = embeddingModel.embed(batch);
+            if (result.size() != batch.size()) {
+                throw new IllegalStateException("Expected " + batch.size() + " embeddings but got " + result.size());
+            }
+            for (int i = 0; i < result.size(); i++) {
+                embeddings[from + i] = result.get(i);
+            }
+            log.debug("Embedded batch of {} chunks", batch.size());
+        } catch (RuntimeException e) {
+            if (!DownstreamErrors.isRejectedInput(e)) {
+                throw e;
+            }
+            if (batch.size() == 1) {
+                log.error("Failed to embed chunk {}", from, e);
+                return;
+            }
+            log.warn("Failed to embed batch of {} chunks, splitting: {}", batch.size(), e.getMessage());
+            int mid = from + batch.size() / 2;
+            embedBatch(texts, from, mid, embeddings);
+            embedBatch(texts, mid, to, embeddings);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.transformer.splitter.TextSplitter;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * SAX handler that turns extracted text into chunks while the document is being parsed.
+ * Text is buffered in a rolling window; once the window is full it is split and every chunk
+ * but the last is handed to the consumer. The last, possibly partial, chunk is carried over
+ * into the next window, so chunk boundaries match splitting the whole text while the memory
+ * held per document is bounded by the window size. Text without whitespace to cut at, such as
+ * CJK text or encoded data, is cut at the end of the window, between two code points.
+ *
+ * When the text is paginated, i.e. Tika wraps pages in {@code <div class="page">}, each chunk
+ * gets the {@code page_start} and {@code page_end} it spans. Splitting and formatting only
+ * change whitespace, so chunks are mapped to pages by counting non-whitespace characters.
+ */
+public class ChunkingContentHandler extends DefaultHandler {
+    private final TextSplitter textSplitter;
+    private final ExtractedTextFormatter textFormatter;
+    private final Map<String, Object> metadata;
+    private final Consumer<Document> consumer;
+    private final int windowChars;
+
+    private final StringBuilder buffer = new StringBuilder();
+    // Non-whitespace offset at which each page starts
+    private final TreeMap<Long, Integer> pageStarts = new TreeMap<>();
+    private int pageCount;
+    private long receivedChars;
+    private long emittedChars;
+    private int splitAt;
+    private int chunkCount;
+    private boolean finished;
+
+    /**
+     * @param textSplitter Splitter applied to each window
+     * @param textFormatter Formatter applied to the text of each window before it is split
+     * @param metadata Metadata copied into every chunk
+     * @param consumer Receives the chunks in document order
+     * @param windowChars Number of buffered characters after which the window is split
+     */
+    public ChunkingContentHandler(TextSplitter textSplitter, ExtractedTextFormatter textFormatter,
+                                  Map<String, Object> metadata, Consumer<Document> consumer, int windowChars) {
+        this.textSplitter = textSplitter;
+        this.textFormatter = textFormatter;
+        this.metadata = metadata;
+        this.consumer = consumer;
+        this.windowChars = windowChars;
+        this.splitAt = windowChars;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if ("div".equals(localName) && "page".equals(attributes.getValue("class"))) {
+            // An empty page shares its offset with the next one, which then wins
+            pageStarts.put(receivedChars, ++pageCount);
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            if (!Character.isWhitespace(ch[i])) {
+                receivedChars++;
+            }
+        }
+        buffer.append(ch, start, length);
+        if (buffer.length() >= splitAt) {
+            splitWindow();
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void endDocument() {
+        finish();
+    }
+
+    /**
+     * Emits the chunks of the remaining buffered text. Safe to call more than once.
+     */
+    public void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        split(buffer.toString()).forEach(this::emit);
+        buffer.setLength(0);
+    }
+
+    /**
+     * @return Number of chunks emitted so far
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * @return Number of characters currently buffered
+     */
+    int getBufferedChars() {
+        return buffer.length();
+    }
+
+    private void splitWindow() {
+        // Cut at the last whitespace so no word is split across windows, unless there is a window
+        // of text without any; that is cut at the end, the carried chunk continues it
+        int cut = lastWhitespace();
+        if (cut <= 0 || buffer.length() - cut > windowChars) {
+            cut = buffer.length();
+            if (Character.isHighSurrogate(buffer.charAt(cut - 1))) {
+                cut--;
+            }
+        }
+        List<Document> chunks = split(buffer.substring(0, cut));
+        if (chunks.isEmpty()) {
+            // Only whitespace
+            buffer.delete(0, cut);
+            splitAt = Math.max(windowChars, buffer.length() + windowChars / 2);
+            return;
+        }
+        if (chunks.size() < 2) {
+            // Not enough text for a complete chunk yet, let the window grow
+            splitAt = buffer.length() + windowChars;
+            return;
+        }
+        chunks.subList(0, chunks.size() - 1).forEach(this::emit);
+        String carry = chunks.get(chunks.size() - 1).getText();
+        buffer.replace(0, cut, carry != null ? carry : "");
+        splitAt = Math.max(windowChars, buffer.length() + windowChars / 2);
+    }
+
+    private int lastWhitespace() {
+        for (int i = buffer.length() - 1; i >= 0; i--) {
+            if (Character.isWhitespace(buffer.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private List<Document> split(String text) {
+        String formatted = textFormatter.format(text);
+        if (formatted.isBlank()) {
+            return List.of();
+        }
+        Document window = new Document(formatted, new HashMap<>(metadata));
+        return textSplitter.split(window);
+    }
+
+    private void emit(Document chunk) {
+        chunkCount++;
+        long chunkStart = emittedChars;
+        emittedChars += nonWhitespaceLength(chunk.getText());
+        if (!pageStarts.isEmpty()) {
+            chunk.getMetadata().put("page_start", pageAt(chunkStart));
+            chunk.getMetadata().put("page_end", pageAt(Math.max(chunkStart, emittedChars - 1)));
+        }
+        consumer.accept(chunk);
+    }
+
+    private int pageAt(long offset) {
+        Map.Entry<Long, Integer> page = pageStarts.floorEntry(offset);
+        return page != null ? page.getValue() : 1;
+    }
+
+    private static long nonWhitespaceLength(String text) {
+        if (text == null) {
+            return 0;
+        }
+        return text.chars().filter(c -> !Character.isWhitespace(c)).count();
+    }
+}
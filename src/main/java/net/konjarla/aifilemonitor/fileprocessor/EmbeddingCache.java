@@ -0,0 +1,108 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.konjarla.aifilemonitor.database.EmbeddingCacheRepository;
+import net.konjarla.aifilemonitor.util.FileUtils;
+import net.konjarla.aifilemonitor.util.LruCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Two level cache of embeddings keyed by the embedding model id and the hash of the
+ * normalized text: an in-memory LRU in front of the {@code embedding_cache} table.
+ * Entries of other models are purged at startup, so changing the configured embedding
+ * model invalidates the cache.
+ */
+@Component
+@Slf4j
+public class EmbeddingCache {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingCacheRepository embeddingCacheRepository;
+    private final String modelId;
+    private final LruCache<String, float[]> memoryCache;
+    private final Counter memoryHits;
+    private final Counter databaseHits;
+    private final Counter misses;
+
+    public EmbeddingCache(EmbeddingCacheRepository embeddingCacheRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${ollama.embedding.model}") String modelId,
+                          @Value("${embedding.cache.memory.max-entries}") Integer maxEntries) {
+        this.embeddingCacheRepository = embeddingCacheRepository;
+        this.modelId = modelId;
+        this.memoryCache = new LruCache<>(maxEntries);
+        this.memoryHits = meterRegistry.counter("embedding.cache.requests", "result", "hit", "tier", "memory");
+        this.databaseHits = meterRegistry.counter("embedding.cache.requests", "result", "hit", "tier", "database");
+        this.misses = meterRegistry.counter("embedding.cache.requests", "result", "miss", "tier", "none");
+        Gauge.builder("embedding.cache.hit.ratio", this, EmbeddingCache::hitRatio).register(meterRegistry);
+        Gauge.builder("embedding.cache.memory.size", memoryCache, LruCache::size).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void purgeOtherModels() {
+        int purged = embeddingCacheRepository.deleteOtherModels(modelId);
+        if (purged > 0) {
+            log.info("Purged {} cached embeddings of previous embedding models", purged);
+        }
+    }
+
+    /**
+     * Returns the key under which the embedding of the given text is cached.
+     */
+    public static String key(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC);
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        return FileUtils.sha256Hex(normalized);
+    }
+
+    /**
+     * Looks up the embeddings for the given keys.
+     * @param keys Keys as returned by {@link #key(String)}
+     * @return Cached embeddings by key, missing keys are absent
+     */
+    public Map<String, float[]> getAll(List<String> keys) {
+        Map<String, float[]> found = new HashMap<>();
+        List<String> notInMemory = new ArrayList<>();
+        for (String key : keys) {
+            float[] embedding = memoryCache.get(key);
+            if (embedding != null) {
+                found.put(key, embedding);
+            } else {
+                notInMemory.add(key);
+            }
+        }
+        memoryHits.increment(found.size());
+        if (!notInMemory.isEmpty()) {
+            Map<String, float[]> stored = embeddingCacheRepository.findAll(modelId, notInMemory);
+            stored.forEach(memoryCache::put);
+            found.putAll(stored);
+            databaseHits.increment(stored.size());
+            misses.increment(notInMemory.size() - stored.size());
+        }
+        return found;
+    }
+
+    public void putAll(Map<String, float[]> embeddings) {
+        embeddings.forEach(memoryCache::put);
+        embeddingCacheRepository.saveAll(modelId, embeddings);
+    }
+
+    private double hitRatio() {
+        double hits = memoryHits.count() + databaseHits.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0 : hits / total;
+    }
+}
@@ -0,0 +1,89 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import lombok.Builder;
+import lombok.Value;
+import net.konjarla.aifilemonitor.search.model.DocumentMetadata;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * File level metadata shared by all chunks of a file. It is built once per file from the
+ * typed file attributes, so the chunk metadata map and the search documents of the chunks are
+ * produced without converting values to strings and parsing them back.
+ */
+@Value
+@Builder
+public class FileMetadata {
+    String fileId;
+    // Absolute path of the file
+    String filename;
+    Long fileSize;
+    String extension;
+    LocalDateTime lastModified;
+    LocalDateTime creationTime;
+    Boolean hidden;
+    Boolean readOnly;
+    String mimeType;
+    // Null while the checksum of a streamed file is not known yet
+    String checksum;
+    String owner;
+    String source;
+
+    /**
+     * @return The metadata under the keys stored with each chunk, as a map the chunks copy
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("file_id", fileId);
+        metadata.put("filename", filename);
+        metadata.put("file_size", fileSize);
+        metadata.put("extension", extension);
+        metadata.put("last_modified", lastModified);
+        metadata.put("modify_date_year", String.valueOf(lastModified.getYear()));
+        metadata.put("modify_date_month", String.valueOf(lastModified.getMonthValue()));
+        metadata.put("modify_date_day", String.valueOf(lastModified.getDayOfMonth()));
+        metadata.put("create_date_year", String.valueOf(creationTime.getYear()));
+        metadata.put("create_date_month", String.valueOf(creationTime.getMonthValue()));
+        metadata.put("create_date_day", String.valueOf(creationTime.getDayOfMonth()));
+        metadata.put("creation_time", creationTime);
+        metadata.put("is_hidden", hidden);
+        metadata.put("is_readonly", readOnly);
+        metadata.put("mimeType", mimeType);
+        if (checksum != null) {
+            metadata.put("checksum", checksum);
+        }
+        if (owner != null) {
+            metadata.put("owner", owner);
+        }
+        if (source != null) {
+            metadata.put(OCRTikaDocumentReader.METADATA_SOURCE, source);
+        }
+        return metadata;
+    }
+
+    /**
+     * @param chunkId Id of the chunk, the id of its search document
+     * @param classifications Classifications of the chunk
+     * @return The search document of a chunk of this file
+     */
+    public DocumentMetadata toDocumentMetadata(String chunkId, List<String> classifications) {
+        return DocumentMetadata.builder()
+                .fileId(chunkId)
+                .filename(filename)
+                .filenameKeyword(filename)
+                .lastModified(lastModified.atZone(ZoneId.systemDefault()).toInstant())
+                .fileSize(fileSize)
+                .extension(extension)
+                .mimeType(mimeType)
+                .creationTime(creationTime.atZone(ZoneId.systemDefault()).toInstant())
+                .isHidden(Boolean.TRUE.equals(hidden))
+                .isReadonly(Boolean.TRUE.equals(readOnly))
+                .classification(classifications != null ? classifications : Collections.emptyList())
+                .build();
+    }
+}
@@ -1,9 +1,11 @@
 package net.konjarla.aifilemonitor.fileprocessor;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.konjarla.aifilemonitor.database.FileChunk;
+import net.konjarla.aifilemonitor.database.FileChunkHash;
 import net.konjarla.aifilemonitor.database.FileItem;
 import net.konjarla.aifilemonitor.database.service.FileChunkService;
 import net.konjarla.aifilemonitor.database.service.FileItemService;
@@ -11,13 +13,15 @@ import net.konjarla.aifilemonitor.llm.LlmService;
 import net.konjarla.aifilemonitor.search.MetadataSearch;
 import net.konjarla.aifilemonitor.search.model.DocumentMetadata;
 import net.konjarla.aifilemonitor.tools.model.FileClassification;
+import net.konjarla.aifilemonitor.transport.DownstreamLimiter;
+import net.konjarla.aifilemonitor.transport.DownstreamLimiter.Downstream;
 import net.konjarla.aifilemonitor.util.FileUtils;
-import net.konjarla.aifilemonitor.util.TextExtractor;
 import org.apache.tika.exception.TikaException;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.transformer.splitter.TextSplitter;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.http.MediaType;
@@ -28,12 +32,11 @@ import org.xml.sax.SAXException;
 import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
@@ -43,7 +46,9 @@ public class FileProcessor {
     @NonNull
     private MetadataSearch metadataSearch;
     @NonNull
-    EmbeddingModel embeddingModel;
+    ChunkEmbedder chunkEmbedder;
+    @NonNull
+    ChunkClassifier chunkClassifier;
     @NonNull
     FileChunkService fileChunkService;
     @NonNull
@@ -52,6 +57,27 @@ public class FileProcessor {
     FileUtils fileUtils;
     @NonNull
     LlmService llmService;
+    @NonNull
+    DownstreamLimiter downstreamLimiter;
+    @NonNull
+    TikaParserRegistry tikaParserRegistry;
+    @NonNull
+    MeterRegistry meterRegistry;
+    @NonNull
+    PdfRangeParser pdfRangeParser;
+    @NonNull
+    ImagePreprocessor imagePreprocessor;
+    @NonNull
+    ImageDeduplicator imageDeduplicator;
+    // Shared, see ChunkingConfiguration
+    @NonNull
+    TextSplitter chunkTextSplitter;
+
+    @Value("${file.chunks.flush-size}")
+    private Integer chunkFlushSize;
+
+    @Value("${file.chunks.stream.window-chars}")
+    private Integer streamWindowChars;
 
     public void processFile(String fileName) {
         File file = new File(fileName);
@@ -71,17 +97,40 @@ public class FileProcessor {
     }
 
     public void processFile(File file, Boolean force) throws IOException, InterruptedException, TikaException, SAXException {
+        processFile(file, force, Runnable::run, Runnable::run).join();
+    }
+
+    /**
+     * Parses the file on the calling thread and hands each batch of its chunks to the enrich
+     * executor, which classifies and embeds it, and from there to the write executor, which
+     * stores it in the database and the search index. Executors that block while their queue
+     * is full throttle the parse of the file.
+     * @return Completes once every chunk of the file is written
+     */
+    public CompletableFuture<Void> processFile(File file, boolean force, Executor enrichExecutor, Executor writeExecutor)
+            throws IOException, InterruptedException, TikaException, SAXException {
         String fileName = file.getName();
         log.info("Processing file for index: {}", fileName);
         FileItem fileItem = fileItemService.findByFilePath(file.getAbsolutePath());
         log.info("File item :: {}", fileItem);
-        if (fileItem == null || force) {
-            // Process the file
-            String fileId = UUID.randomUUID().toString();
+        if (fileItem == null || force || hasChanged(file, fileItem)) {
+            // Process the file, an existing entry keeps its id so its chunks can be diffed
+            String fileId = fileItem != null ? fileItem.getId() : UUID.randomUUID().toString();
             Map<String, Object> metadata = new HashMap<>();
-            fileUtils.populateFileMetadata(file, metadata);
-            Map<String, String> fileMetadata = TextExtractor.extractMetadata(file);
-            String mimeType = fileMetadata.get("Content-Type");
+            fileUtils.populateFileMetadata(file, metadata, false);
+
+            // Detect the type from the leading bytes only, the text is streamed out of the parser later
+            String mimeType = tikaParserRegistry.detect(file);
+            Optional<MediaType> mediaType = MediaTypeFactory.getMediaType(file.getAbsolutePath());
+            boolean isImage = isImage(file);
+            // The parse of a streamed file feeds the checksum digest, so its checksum is only known at the end
+            boolean streamed = mediaType.isPresent() && !isImage;
+            if (!streamed) {
+                metadata.put("checksum", fileUtils.calculateFileChecksum(file));
+            }
+
+            // Saved before its chunks are written, without its checksum: a missing checksum marks the
+            // entry as incomplete, so a file whose description or chunks fail is processed again
             fileItem = FileItem.builder()
                     .id(fileId)
                     .filePath(file.getAbsolutePath())
@@ -93,7 +142,6 @@ public class FileProcessor {
                     .creationTime((LocalDateTime) metadata.get("creationTime"))
                     .isHidden((Boolean) metadata.get("isHidden"))
                     .isReadOnly((Boolean) metadata.get("isReadOnly"))
-                    .checksum((String) metadata.get("checksum"))
                     .mimeType(mimeType)
                     .owner((String) metadata.get("owner"))
                     .groupName((String) metadata.get("groupName"))
@@ -102,125 +150,89 @@ public class FileProcessor {
 
             FileItem savedFileItem = fileItemService.addFileItem(fileItem);
 
-            log.info("Extracting text from file: {}", fileName);
-
-            Map<String, Integer> modifyDateComponents = parseDateComponents(metadata.get("lastModified").toString());
-            String modifyDateYear = modifyDateComponents.get("year").toString();
-            String modifyDateMonth = modifyDateComponents.get("month").toString();
-            String modifyDateDay = modifyDateComponents.get("day").toString();
-
-            Map<String, Integer> createDateComponents = parseDateComponents(metadata.get("creationTime").toString());
-            String createDateYear = createDateComponents.get("year").toString();
-            String createDateMonth = createDateComponents.get("month").toString();
-            String createDateDay = createDateComponents.get("day").toString();
-
-            List<Document> documents = new ArrayList<>();
+            // Built once and shared by all chunks of the file
+            FileMetadata fileMetadata = FileMetadata.builder()
+                    .fileId(fileId)
+                    .filename(file.getAbsolutePath())
+                    .fileSize((Long) metadata.get("fileSize"))
+                    .extension(getFileExtension(fileName))
+                    .lastModified((LocalDateTime) metadata.get("lastModified"))
+                    .creationTime((LocalDateTime) metadata.get("creationTime"))
+                    .hidden((Boolean) metadata.get("isHidden"))
+                    .readOnly((Boolean) metadata.get("isReadOnly"))
+                    .mimeType(mimeType)
+                    .checksum((String) metadata.get("checksum"))
+                    .owner(isImage ? (String) metadata.get("owner") : null)
+                    .source(isImage ? null : fileName)
+                    .build();
+            Map<String, Object> documentMetadata = fileMetadata.toMap();
 
-            Optional<MediaType> mediaType = MediaTypeFactory.getMediaType(file.getAbsolutePath());
+            ChunkWriter chunkWriter = new ChunkWriter(savedFileItem, fileMetadata, force, enrichExecutor, writeExecutor);
             if (mediaType.isPresent()) {
                 log.info("mediaType: {}", mediaType.get());
-                if (mediaType.get().equals(MediaType.IMAGE_JPEG) ||
-                        mediaType.get().equals(MediaType.IMAGE_PNG) ||
-                        mediaType.get().equals(MediaType.IMAGE_GIF)) {
-                    FileClassification classification = llmService.processPhotoContents(file);
+                if (isImage) {
+                    ImagePreprocessor.PreparedImage image = imagePreprocessor.prepare(file, mimeType,
+                            (String) metadata.get("checksum"));
+                    // Near-duplicates of an already described image reuse its description
+                    FileClassification classification = imageDeduplicator.findSimilar(image).orElse(null);
+                    if (classification == null) {
+                        classification = llmService.processPhotoContents(file, image);
+                        imageDeduplicator.remember(image, (String) metadata.get("checksum"), classification);
+                    }
                     String text = classification.getText();
-                    List<String> classifications = classification.getClassifications();
-                    Document document = new Document(text);
-                    document.getMetadata().put("file_id", fileId);
-                    document.getMetadata().put("filename", file.getAbsolutePath());
-                    document.getMetadata().put("file_size", metadata.get("fileSize"));
-                    document.getMetadata().put("extension", getFileExtension(fileName));
-                    document.getMetadata().put("last_modified", metadata.get("lastModified"));
-                    document.getMetadata().put("modify_date_year", modifyDateYear);
-                    document.getMetadata().put("modify_date_month", modifyDateMonth);
-                    document.getMetadata().put("modify_date_day", modifyDateDay);
-                    document.getMetadata().put("create_date_year", createDateYear);
-                    document.getMetadata().put("create_date_month", createDateMonth);
-                    document.getMetadata().put("create_date_day", createDateDay);
-                    document.getMetadata().put("creation_time", metadata.get("creationTime"));
-                    document.getMetadata().put("is_hidden", metadata.get("isHidden"));
-                    document.getMetadata().put("is_readonly", metadata.get("isReadOnly"));
-                    document.getMetadata().put("checksum", metadata.get("checksum"));
-                    document.getMetadata().put("mimeType", mimeType);
-                    document.getMetadata().put("owner", metadata.get("owner"));
-                    document.getMetadata().put("classification", classifications);
+                    Document document = new Document(text, documentMetadata);
+                    document.getMetadata().put("classification", classification.getClassifications());
                     log.info("Extracted text from image: {}", text);
-                    documents.add(document);
+                    chunkTextSplitter.split(document).forEach(chunkWriter::accept);
                 } else {
-                    documents = new OCRTikaDocumentReader(new FileSystemResource(file.getAbsolutePath()))
-                            .get()
-                            .stream().peek(document -> {
-                                //FileClassification classification = llmService.classifyText(document.getText());
-                                //List<String> classifications = classification.getClassifications();
-                                document.getMetadata().put("file_id", fileId);
-                                document.getMetadata().put("filename", file.getAbsolutePath());
-                                document.getMetadata().put("file_size", metadata.get("fileSize"));
-                                document.getMetadata().put("extension", getFileExtension(fileName));
-                                document.getMetadata().put("last_modified", metadata.get("lastModified"));
-                                document.getMetadata().put("modify_date_year", modifyDateYear);
-                                document.getMetadata().put("modify_date_month", modifyDateMonth);
-                                document.getMetadata().put("modify_date_day", modifyDateDay);
-                                document.getMetadata().put("create_date_year", createDateYear);
-                                document.getMetadata().put("create_date_month", createDateMonth);
-                                document.getMetadata().put("create_date_day", createDateDay);
-                                document.getMetadata().put("creation_time", metadata.get("creationTime"));
-                                document.getMetadata().put("is_hidden", metadata.get("isHidden"));
-                                document.getMetadata().put("is_readonly", metadata.get("isReadOnly"));
-                                document.getMetadata().put("checksum", metadata.get("checksum"));
-                                document.getMetadata().put("mimeType", mimeType);
-                                //document.getMetadata().put("classification", classifications);
-                                log.info("Reading file :: {}", fileName);
-                                log.info("File Id :: {}", fileId);
-                            }).toList();
+                    log.info("Extracting text from file: {}", fileName);
+                    log.info("File Id :: {}", fileId);
+                    OCRTikaDocumentReader reader = new OCRTikaDocumentReader(new FileSystemResource(file.getAbsolutePath()),
+                            tikaParserRegistry, mimeType, FileUtils.newChecksumDigest());
+                    ChunkingContentHandler chunkingHandler = new ChunkingContentHandler(chunkTextSplitter,
+                            ExtractedTextFormatter.defaults(), documentMetadata, chunkWriter::accept, streamWindowChars);
+                    Optional<PdfRangeParser.ParsedPages> parsedPages = "application/pdf".equals(mimeType)
+                            ? pdfRangeParser.parse(file, chunkingHandler)
+                            : Optional.empty();
+                    if (parsedPages.isPresent()) {
+                        // Large PDF parsed in page ranges, the reader did not see the bytes of the file
+                        PdfRangeParser.ParsedPages pages = parsedPages.get();
+                        savedFileItem.setPageCount(pages.getPageCount());
+                        savedFileItem.setOcrPages(pages.getOcrPages());
+                        log.info("Pages of {} :: {} with text layer in {} ms, {} OCR'd in {} ms (in ranges)", fileName,
+                                pages.getPageCount() - pages.getOcrPages().size(), pages.getTextPageMillis(),
+                                pages.getOcrPages().size(), pages.getOcrPageMillis());
+                    } else if ("application/pdf".equals(mimeType)) {
+                        PdfPageStatsHandler pageStats = new PdfPageStatsHandler(chunkingHandler, meterRegistry);
+                        reader.read(pageStats);
+                        savedFileItem.setPageCount(pageStats.getPageCount());
+                        savedFileItem.setOcrPages(pageStats.getOcrPages());
+                        log.info("Pages of {} :: {} with text layer in {} ms, {} OCR'd in {} ms", fileName,
+                                pageStats.getPageCount() - pageStats.getOcrPages().size(), pageStats.getTextPageMillis(),
+                                pageStats.getOcrPages().size(), pageStats.getOcrPageMillis());
+                    } else {
+                        reader.read(chunkingHandler);
+                    }
+                    chunkingHandler.finish();
+                    savedFileItem.setChecksum(parsedPages.isPresent()
+                            ? fileUtils.calculateFileChecksum(file)
+                            : reader.getChecksum());
                 }
             }
-
-            TokenTextSplitter tokenTextSplitter = new TokenTextSplitter();
-            log.info("Total number of documents :: {}", documents.size());
-            documents.forEach(document -> {
-                AtomicInteger counter = new AtomicInteger(0);
-                tokenTextSplitter.split(document)
-                        .forEach(chunk -> {
-                            Integer count = counter.incrementAndGet();
-                            String chunkId = chunk.getId();
-                            log.info("Processing chunk :: {}", count);
-                            FileClassification classification = llmService.classifyText(chunk.getText());
-                            List<String> classifications = classification.getClassifications();
-                            chunk.getMetadata().put("classification", classifications);
-                            chunk.getMetadata().put("doc_id", chunkId);
-                            //fileVectorStore.add(List.of(chunk));
-                            FileChunk fileChunk = FileChunk.builder()
-                                    .id(chunkId)
-                                    .chunkIndex(count)
-                                    .content(chunk.getFormattedContent())
-                                    .metadata(chunk.getMetadata())
-                                    //.embedding(embeddingModel.embed(chunk.getFormattedContent()))
-                                    .fileItem(savedFileItem)
-                                    .build();
-                            fileChunkService.addFileChunk(fileChunk);
-                            fileChunkService.updateEmbedding(chunkId, embeddingModel.embed(chunk.getFormattedContent()));
-                            // Add to elasticsearch
-                            DocumentMetadata documentMetadata = DocumentMetadata.builder()
-                                    .fileId(chunkId)
-                                    .filename(chunk.getMetadata().get("filename").toString())
-                                    .filenameKeyword(chunk.getMetadata().get("filename").toString())
-                                    .lastModified(parseDateTime(chunk.getMetadata().get("last_modified").toString()))
-                                    .fileSize(Long.parseLong(chunk.getMetadata().get("file_size").toString()))
-                                    .extension(chunk.getMetadata().get("extension").toString())
-                                    .mimeType(chunk.getMetadata().get("mimeType").toString())
-                                    .creationTime(parseDateTime(chunk.getMetadata().get("creation_time").toString()))
-                                    .isHidden(Boolean.parseBoolean(chunk.getMetadata().get("is_hidden").toString()))
-                                    .isReadonly(Boolean.parseBoolean(chunk.getMetadata().get("is_readonly").toString()))
-                                    .classification(classifications)
-                                    .build();
-                            metadataSearch.indexDocument(documentMetadata);
-                        });
+            // The checksum completes the entry once every chunk is written
+            CompletableFuture<Void> written = chunkWriter.finish().thenRun(() -> {
+                if (!streamed) {
+                    savedFileItem.setChecksum((String) metadata.get("checksum"));
+                }
+                fileItemService.addFileItem(savedFileItem);
+                fileChunkService.updateChecksum(fileId, savedFileItem.getChecksum());
             });
             // savedFileItem.setIsSensitive(false);
             // fileRepository.save(savedFileItem);
-            log.info("Finished processing file for index: {}", fileName);
+            return written.thenRun(() -> log.info("Finished processing file for index: {}", fileName));
         } else {
             log.info("File already indexed: {}", fileName);
+            return CompletableFuture.completedFuture(null);
         }
     }
 
@@ -238,14 +250,10 @@ public class FileProcessor {
     public String removeFile(String fileId) throws IOException, InterruptedException {
         Optional<FileItem> fileItemOpt = fileItemService.findByIdWithChunks(fileId);
         if (fileItemOpt.isPresent()) {
-            fileItemOpt.get().getChunks().forEach(fileChunk -> {
-                try {
-                    metadataSearch.deleteDocument(fileChunk.getId().toString());
-                }
-                catch (Exception e) {
-                    log.error("Error deleting chunk: {}", fileChunk.getId(), e);
-                }
-            });
+            // Throws if a search document could not be deleted, the rows are kept for the next attempt
+            metadataSearch.bulkDelete(fileItemOpt.get().getChunks().stream()
+                    .map(FileChunk::getId)
+                    .toList());
             //metadataSearch.
             // fileVectorStore.delete(List.of(fileId));
             fileItemService.deleteById(fileId);
@@ -255,66 +263,250 @@ public class FileProcessor {
         }
     }
 
-    private String getFileExtension(String fileName) {
-        int idx = fileName.lastIndexOf('.');
-        return idx > 0 ? fileName.substring(idx + 1) : "";
+    /**
+     * @return Whether the file is an image described by the vision model, judged by its name
+     */
+    public static boolean isImage(File file) {
+        Optional<MediaType> mediaType = MediaTypeFactory.getMediaType(file.getAbsolutePath());
+        return mediaType.isPresent() && (mediaType.get().equals(MediaType.IMAGE_JPEG) ||
+                mediaType.get().equals(MediaType.IMAGE_PNG) ||
+                mediaType.get().equals(MediaType.IMAGE_GIF));
     }
 
-    private static LocalDateTime parseDate(String dateTimeString) throws DateTimeParseException {
-        DateTimeFormatter[] formatters = {
-                DateTimeFormatter.ISO_DATE_TIME,  // Handles "2022-04-19T15:49:12"
-                DateTimeFormatter.ISO_LOCAL_DATE_TIME, // Handles "2022-04-19T15:49:12"
-                DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"), // Explicit format
-                DateTimeFormatter.ISO_DATE,  // Handles "2022-04-19"
-                DateTimeFormatter.ofPattern("yyyy-MM-dd")  // Fallback format
-        };
-
-        LocalDateTime date = null;
-        DateTimeParseException parseException = null;
-
-        // Try each formatter until one works
-        for (DateTimeFormatter formatter : formatters) {
-            try {
-                if (formatter.toString().contains("'T'") || formatter.toString().contains("HH:mm")) {
-                    // For date-time formatters, parse to LocalDateTime first
-                    date = LocalDateTime.parse(dateTimeString, formatter);
-                } else {
-                    // For date-only formatters
-                    date = LocalDateTime.parse(dateTimeString, formatter);
-                }
-                break; // If we get here, parsing was successful
-            } catch (DateTimeParseException e) {
-                parseException = e;
-                // Continue to next formatter
-            }
+    /**
+     * Checks whether the file differs from its indexed entry. Size and modification time are
+     * compared first; only when the size matches but the time differs is the checksum read.
+     */
+    private boolean hasChanged(File file, FileItem fileItem) {
+        LocalDateTime lastModified = LocalDateTime.ofInstant(Instant.ofEpochMilli(file.lastModified()),
+                ZoneId.systemDefault());
+        if (fileItem.getChecksum() == null) {
+            // Indexing of the file did not complete
+            return true;
+        }
+        boolean sameSize = Objects.equals(fileItem.getFileSize(), file.length());
+        if (sameSize && lastModified.equals(fileItem.getLastModified())) {
+            return false;
+        }
+        if (sameSize && fileItem.getChecksum().equals(fileUtils.calculateFileChecksum(file))) {
+            log.info("File touched without content change: {}", file.getName());
+            fileItem.setLastModified(lastModified);
+            fileItemService.addFileItem(fileItem);
+            return false;
         }
-        return date;
+        return true;
     }
 
-    private static Instant parseDateTime(String dateTimeString) throws DateTimeParseException {
-        return parseDate(dateTimeString).atZone(ZoneId.systemDefault()).toInstant();
+    private Map<String, Deque<FileChunkHash>> existingChunksByHash(String fileId) {
+        Map<String, Deque<FileChunkHash>> chunksByHash = new HashMap<>();
+        fileChunkService.findChunkHashes(fileId).forEach(chunk ->
+                chunksByHash.computeIfAbsent(String.valueOf(chunk.getContentHash()), k -> new ArrayDeque<>()).add(chunk));
+        return chunksByHash;
     }
 
-    private static Map<String, Integer> parseDateComponents(String dateTimeString) throws DateTimeParseException {
-        LocalDate date = null;
-        DateTimeParseException parseException = null;
-        try {
-            date = parseDate(dateTimeString).toLocalDate();
-        } catch (DateTimeParseException e) {
-            parseException = e;
+    private static FileChunkHash pollChunk(Map<String, Deque<FileChunkHash>> chunksByHash, String contentHash) {
+        Deque<FileChunkHash> candidates = chunksByHash.get(contentHash);
+        if (candidates == null) {
+            return null;
+        }
+        FileChunkHash chunk = candidates.poll();
+        if (candidates.isEmpty()) {
+            chunksByHash.remove(contentHash);
+        }
+        return chunk;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> getClassifications(Map<String, Object> metadata) {
+        Object classifications = metadata != null ? metadata.get("classification") : null;
+        return classifications instanceof List ? (List<String>) classifications : List.of();
+    }
+
+    /**
+     * Consumes the chunks of one file as they are produced. Unchanged chunks are matched by their
+     * content hash, the others are collected into batches of {@code file.chunks.flush-size} that are
+     * classified and embedded on the enrich executor, then written on the write executor.
+     * Each batch is committed on its own, so a file that fails midway keeps the batches already
+     * written; its entry has no checksum until every batch is written, so it is indexed again.
+     */
+    private class ChunkWriter {
+        private final FileItem fileItem;
+        private final FileMetadata fileMetadata;
+        private final boolean force;
+        private final Executor enrichExecutor;
+        private final Executor writeExecutor;
+        // Chunks whose text is already stored for this file keep their id, classification and embedding
+        private final Map<String, Deque<FileChunkHash>> existingChunks;
+        private final LocalDateTime indexedAt = LocalDateTime.now();
+        // In DOCUMENT mode the whole file shares the labels of its head, classified once
+        private final boolean documentMode;
+        private List<String> documentHead;
+        private List<String> documentClassifications;
+        private final List<CompletableFuture<Void>> pendingBatches = new ArrayList<>();
+        private final AtomicInteger addedCount = new AtomicInteger();
+        private final AtomicInteger retainedCount = new AtomicInteger();
+        private List<Document> chunks = new ArrayList<>();
+        private List<Integer> chunkIndexes = new ArrayList<>();
+        private List<String> chunkHashes = new ArrayList<>();
+        private List<FileChunk> retainedChunks = new ArrayList<>();
+        private List<DocumentMetadata> documentMetadataList = new ArrayList<>();
+        private int count;
+
+        ChunkWriter(FileItem fileItem, FileMetadata fileMetadata, boolean force, Executor enrichExecutor,
+                    Executor writeExecutor) {
+            this.fileItem = fileItem;
+            this.fileMetadata = fileMetadata;
+            this.force = force;
+            this.enrichExecutor = enrichExecutor;
+            this.writeExecutor = writeExecutor;
+            this.existingChunks = existingChunksByHash(fileItem.getId());
+            this.documentMode = chunkClassifier.modeFor(fileMetadata.getMimeType()) == ChunkClassifier.Mode.DOCUMENT;
+        }
+
+        void accept(Document chunk) {
+            count++;
+            String contentHash = FileUtils.sha256Hex(chunk.getText());
+            FileChunkHash existingChunk = force ? null : pollChunk(existingChunks, contentHash);
+            if (existingChunk != null) {
+                if (documentMode && count == 1) {
+                    // The head is unchanged, so are the labels it was classified with
+                    setDocumentClassifications(getClassifications(existingChunk.getMetadata()));
+                }
+                retainedChunks.add(FileChunk.builder()
+                        .id(existingChunk.getId())
+                        .chunkIndex(count)
+                        .metadata(chunk.getMetadata())
+                        .lastIndexed(indexedAt)
+                        .build());
+                documentMetadataList.add(fileMetadata.toDocumentMetadata(existingChunk.getId(),
+                        getClassifications(existingChunk.getMetadata())));
+            } else {
+                log.info("Processing chunk :: {}", count);
+                chunk.getMetadata().put("doc_id", chunk.getId());
+                chunks.add(chunk);
+                chunkIndexes.add(count);
+                chunkHashes.add(contentHash);
+            }
+            if (chunks.size() + retainedChunks.size() >= chunkFlushSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (chunks.isEmpty() && retainedChunks.isEmpty()) {
+                return;
+            }
+            List<Document> batch = chunks;
+            List<Integer> batchIndexes = chunkIndexes;
+            List<String> batchHashes = chunkHashes;
+            List<FileChunk> batchRetained = retainedChunks;
+            List<DocumentMetadata> batchMetadata = documentMetadataList;
+            chunks = new ArrayList<>();
+            chunkIndexes = new ArrayList<>();
+            chunkHashes = new ArrayList<>();
+            retainedChunks = new ArrayList<>();
+            documentMetadataList = new ArrayList<>();
+            if (documentMode && documentHead == null && !batch.isEmpty()) {
+                documentHead = batch.stream().map(Document::getText).toList();
+            }
+
+            // Keep failed batches, they fail the file in finish()
+            pendingBatches.removeIf(batchFuture -> batchFuture.isDone() && !batchFuture.isCompletedExceptionally());
+            pendingBatches.add(CompletableFuture
+                    .supplyAsync(() -> enrich(batch, batchIndexes, batchHashes, batchMetadata), enrichExecutor)
+                    .thenAcceptAsync(fileChunks -> write(fileChunks, batchRetained, batchMetadata), writeExecutor));
+        }
+
+        /**
+         * Classifies and embeds new chunks, adding their search documents to the batch metadata.
+         */
+        private List<FileChunk> enrich(List<Document> batch, List<Integer> batchIndexes, List<String> batchHashes,
+                                       List<DocumentMetadata> batchMetadata) {
+            // New chunks are classified together in batches, or take the labels of the document
+            List<List<String>> classifications = documentMode
+                    ? Collections.nCopies(batch.size(), documentClassifications())
+                    : chunkClassifier.classify(fileMetadata.getMimeType(), batch.stream()
+                            .map(Document::getText)
+                            .toList());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).getMetadata().put("classification", classifications.get(i));
+            }
+
+            // Embed the chunk text only, so identical text shares one cached embedding across files
+            List<float[]> embeddings = chunkEmbedder.embed(batch.stream()
+                    .map(Document::getText)
+                    .toList());
+            List<FileChunk> fileChunks = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                Document chunk = batch.get(i);
+                float[] embedding = embeddings.get(i);
+                if (embedding == null) {
+                    // Fails the file rather than leave a hole it would never be re-indexed for
+                    throw new IllegalStateException("Could not embed chunk " + batchIndexes.get(i) + " of "
+                            + fileMetadata.getFilename());
+                }
+                String chunkId = chunk.getId();
+                fileChunks.add(FileChunk.builder()
+                        .id(chunkId)
+                        .chunkIndex(batchIndexes.get(i))
+                        .content(chunk.getFormattedContent())
+                        .contentHash(batchHashes.get(i))
+                        .metadata(chunk.getMetadata())
+                        .embedding(embedding)
+                        .lastIndexed(indexedAt)
+                        .fileItem(fileItem)
+                        .build());
+                // Add to elasticsearch
+                batchMetadata.add(fileMetadata.toDocumentMetadata(chunkId, getClassifications(chunk.getMetadata())));
+            }
+            return fileChunks;
         }
 
+        // Classified by the first batch to get here, with the first new chunks of the file
+        private synchronized List<String> documentClassifications() {
+            if (documentClassifications == null) {
+                documentClassifications = chunkClassifier.classifyDocument(documentHead);
+            }
+            return documentClassifications;
+        }
 
-        if (date == null) {
-            throw parseException != null ? parseException :
-                    new DateTimeParseException("Could not parse date: " + dateTimeString, dateTimeString, 0);
+        private synchronized void setDocumentClassifications(List<String> classifications) {
+            documentClassifications = classifications;
         }
 
-        Map<String, Integer> dateComponents = new HashMap<>();
-        dateComponents.put("year", date.getYear());
-        dateComponents.put("month", date.getMonthValue());
-        dateComponents.put("day", date.getDayOfMonth());
+        private void write(List<FileChunk> fileChunks, List<FileChunk> batchRetained,
+                           List<DocumentMetadata> batchMetadata) {
+            downstreamLimiter.run(Downstream.POSTGRES,
+                    () -> fileChunkService.saveFileChunks(fileChunks, batchRetained, List.of()));
+            metadataSearch.bulkIndex(batchMetadata);
+            addedCount.addAndGet(fileChunks.size());
+            retainedCount.addAndGet(batchRetained.size());
+        }
 
-        return dateComponents;
+        /**
+         * Flushes the last batch and, once every batch is written, removes the chunks no longer in the file.
+         */
+        CompletableFuture<Void> finish() {
+            flush();
+            List<String> staleChunkIds = existingChunks.values().stream()
+                    .flatMap(Collection::stream)
+                    .map(FileChunkHash::getId)
+                    .toList();
+            return CompletableFuture.allOf(pendingBatches.toArray(CompletableFuture[]::new))
+                    .thenRun(() -> {
+                        if (!staleChunkIds.isEmpty()) {
+                            // Search documents first, rows left behind by a failed delete are found again on retry
+                            metadataSearch.bulkDelete(staleChunkIds);
+                            fileChunkService.saveFileChunks(List.of(), List.of(), staleChunkIds);
+                        }
+                        log.info("Chunks of {} :: {} new, {} unchanged, {} stale", fileItem.getFileName(),
+                                addedCount.get(), retainedCount.get(), staleChunkIds.size());
+                    });
+        }
+    }
+
+    private String getFileExtension(String fileName) {
+        int idx = fileName.lastIndexOf('.');
+        return idx > 0 ? fileName.substring(idx + 1) : "";
     }
 }
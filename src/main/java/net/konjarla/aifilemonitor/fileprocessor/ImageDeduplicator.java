@@ -0,0 +1,100 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.konjarla.aifilemonitor.database.ImageHashRepository;
+import net.konjarla.aifilemonitor.tools.model.FileClassification;
+import net.konjarla.aifilemonitor.util.BkTree;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reuses the vision model's description of near-duplicate images: bursts, edited copies and
+ * resized versions of a photo. The perceptual hashes of described images are kept in the
+ * {@code image_hashes} table and in an in-memory BK-tree loaded at startup; an image whose hash
+ * is within {@code image.dedup.max-distance} bits of a known one gets that image's description.
+ * Entries of other vision models are purged at startup, like the embedding cache.
+ */
+@Component
+@Slf4j
+public class ImageDeduplicator {
+    private static final int LOAD_PAGE_SIZE = 10000;
+
+    private final ImageHashRepository imageHashRepository;
+    private final String modelId;
+    private final boolean enabled;
+    private final int maxDistance;
+    private final BkTree tree = new BkTree();
+    private final Counter hits;
+    private final Counter misses;
+
+    public ImageDeduplicator(ImageHashRepository imageHashRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${ollama.photo.chat.model}") String modelId,
+                             @Value("${image.dedup.enabled}") boolean enabled,
+                             @Value("${image.dedup.max-distance}") int maxDistance) {
+        this.imageHashRepository = imageHashRepository;
+        this.modelId = modelId;
+        this.enabled = enabled;
+        this.maxDistance = maxDistance;
+        this.hits = meterRegistry.counter("image.dedup.requests", "result", "hit");
+        this.misses = meterRegistry.counter("image.dedup.requests", "result", "miss");
+        Gauge.builder("image.dedup.hashes", tree, BkTree::size).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        int purged = imageHashRepository.deleteOtherModels(modelId);
+        if (purged > 0) {
+            log.info("Purged {} image hashes of previous vision models", purged);
+        }
+        long start = System.nanoTime();
+        int count = imageHashRepository.forEachHash(modelId, LOAD_PAGE_SIZE, tree::add);
+        log.info("Loaded {} image hashes in {} ms", count, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * @param image The prepared image
+     * @return The description of the closest known image within the distance threshold
+     */
+    public Optional<FileClassification> findSimilar(ImagePreprocessor.PreparedImage image) {
+        if (!enabled || image.getPerceptualHash() == null) {
+            return Optional.empty();
+        }
+        List<BkTree.Match> matches = tree.search(image.getPerceptualHash(), maxDistance);
+        for (BkTree.Match match : matches) {
+            Optional<FileClassification> classification = imageHashRepository.findByHash(modelId, match.getHash());
+            if (classification.isPresent()) {
+                log.info("Reusing description of a known image at distance {}", match.getDistance());
+                hits.increment();
+                return classification;
+            }
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Stores the description the vision model gave the image.
+     * @param image The prepared image
+     * @param checksum Checksum of the image file
+     * @param classification The description and classifications of the image
+     */
+    public void remember(ImagePreprocessor.PreparedImage image, String checksum, FileClassification classification) {
+        if (!enabled || image.getPerceptualHash() == null || checksum == null) {
+            return;
+        }
+        imageHashRepository.save(checksum, image.getPerceptualHash(), modelId, classification);
+        tree.add(image.getPerceptualHash());
+    }
+}
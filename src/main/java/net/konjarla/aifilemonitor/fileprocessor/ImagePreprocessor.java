@@ -0,0 +1,216 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.konjarla.aifilemonitor.util.LruCache;
+import net.konjarla.aifilemonitor.util.PerceptualHash;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Prepares images for the vision model. The image is decoded, turned upright according to its
+ * EXIF orientation, downscaled so its longest side fits {@code image.vision.max-dimension} and
+ * re-encoded, JPEG as JPEG and everything else as PNG. The model works on this resolution
+ * anyway, sending the original photo only makes the request larger and slower. Prepared images
+ * are cached by the checksum of the file, so retries and re-indexing do not decode it again.
+ * The perceptual hash of the upright image is computed on the way, see {@link ImageDeduplicator}.
+ */
+@Component
+@Slf4j
+public class ImagePreprocessor {
+    private final int maxDimension;
+    private final float jpegQuality;
+    private final LruCache<String, PreparedImage> cache;
+    private final DistributionSummary originalBytes;
+    private final DistributionSummary preparedBytes;
+
+    public ImagePreprocessor(MeterRegistry meterRegistry,
+                             @Value("${image.vision.max-dimension}") int maxDimension,
+                             @Value("${image.vision.jpeg-quality}") float jpegQuality,
+                             @Value("${image.vision.cache.max-entries}") int maxEntries) {
+        this.maxDimension = maxDimension;
+        this.jpegQuality = jpegQuality;
+        this.cache = new LruCache<>(maxEntries);
+        this.originalBytes = DistributionSummary.builder("image.prepare.bytes")
+                .tag("stage", "original").baseUnit("bytes").register(meterRegistry);
+        this.preparedBytes = DistributionSummary.builder("image.prepare.bytes")
+                .tag("stage", "prepared").baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Image as sent to the vision model.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class PreparedImage {
+        private final byte[] bytes;
+        private final MimeType mimeType;
+        private final int width;
+        private final int height;
+        // dHash of the upright image, null if it could not be decoded
+        private final Long perceptualHash;
+    }
+
+    /**
+     * @param file The image file
+     * @param mimeType The detected media type of the file
+     * @param checksum Checksum of the file, used as cache key when not {@code null}
+     * @return The prepared image, or the original bytes if the image cannot be decoded
+     */
+    public PreparedImage prepare(File file, String mimeType, String checksum) throws IOException {
+        if (checksum != null) {
+            PreparedImage cached = cache.get(checksum);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        long start = System.nanoTime();
+        byte[] original = Files.readAllBytes(file.toPath());
+        PreparedImage prepared = prepare(file, original, mimeType);
+        originalBytes.record(original.length);
+        preparedBytes.record(prepared.getBytes().length);
+        log.info("Prepared image {} :: {} -> {} bytes, {}x{} {} in {} ms", file.getName(), original.length,
+                prepared.getBytes().length, prepared.getWidth(), prepared.getHeight(), prepared.getMimeType(),
+                (System.nanoTime() - start) / 1_000_000);
+        if (checksum != null) {
+            cache.put(checksum, prepared);
+        }
+        return prepared;
+    }
+
+    private PreparedImage prepare(File file, byte[] original, String mimeType) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(original));
+        if (image == null) {
+            log.warn("No image reader for {}, sending it unchanged", file.getName());
+            return new PreparedImage(original, MimeType.valueOf(mimeType), -1, -1, null);
+        }
+        int orientation = readOrientation(file);
+        boolean jpeg = MimeTypeUtils.IMAGE_JPEG_VALUE.equals(mimeType);
+        boolean scaled = Math.max(image.getWidth(), image.getHeight()) > maxDimension;
+        if (!scaled && orientation == 1 && (jpeg || MimeTypeUtils.IMAGE_PNG_VALUE.equals(mimeType))) {
+            // Already small and upright in a format the model accepts
+            return new PreparedImage(original, MimeType.valueOf(mimeType), image.getWidth(), image.getHeight(),
+                    PerceptualHash.dHash(image));
+        }
+        image = orient(image, orientation);
+        if (scaled) {
+            image = downscale(image, maxDimension);
+        }
+        long hash = PerceptualHash.dHash(image);
+        return jpeg
+                ? new PreparedImage(encodeJpeg(image), MimeTypeUtils.IMAGE_JPEG, image.getWidth(), image.getHeight(), hash)
+                : new PreparedImage(encodePng(image), MimeTypeUtils.IMAGE_PNG, image.getWidth(), image.getHeight(), hash);
+    }
+
+    // EXIF orientation 1 to 8, 1 being upright; images without EXIF are upright
+    private static int readOrientation(File file) {
+        try {
+            ExifIFD0Directory exif = ImageMetadataReader.readMetadata(file).getFirstDirectoryOfType(ExifIFD0Directory.class);
+            if (exif != null && exif.containsTag(ExifIFD0Directory.TAG_ORIENTATION)) {
+                return exif.getInt(ExifIFD0Directory.TAG_ORIENTATION);
+            }
+        } catch (Exception e) {
+            log.debug("Could not read EXIF orientation of {}", file.getName(), e);
+        }
+        return 1;
+    }
+
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation < 2 || orientation > 8) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        // Orientations 5 to 8 swap width and height
+        boolean transposed = orientation >= 5;
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, width, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, width, height);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, height);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, height, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, height, width);
+            default -> new AffineTransform(0, -1, 1, 0, 0, width);
+        };
+        BufferedImage oriented = new BufferedImage(transposed ? height : width, transposed ? width : height, imageType(image));
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+
+    // Halves the image until it is close to the target, single bilinear steps lose too much detail
+    private static BufferedImage downscale(BufferedImage image, int maxDimension) {
+        double scale = (double) maxDimension / Math.max(image.getWidth(), image.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage current = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage step = new BufferedImage(width, height, imageType(image));
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static int imageType(BufferedImage image) {
+        return image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
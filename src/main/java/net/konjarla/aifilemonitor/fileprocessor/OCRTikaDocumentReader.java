@@ -1,11 +1,10 @@
 package net.konjarla.aifilemonitor.fileprocessor;
 
+import net.konjarla.aifilemonitor.util.FileUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
-import org.apache.tika.parser.ocr.TesseractOCRConfig;
-import org.apache.tika.parser.pdf.PDFParserConfig;
 import org.apache.tika.sax.BodyContentHandler;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.document.DocumentReader;
@@ -17,6 +16,9 @@ import org.xml.sax.ContentHandler;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.List;
 import java.util.Objects;
 
@@ -31,6 +33,11 @@ import java.util.Objects;
  * If you require more specialized handling for PDFs, consider using the
  * PagePdfDocumentReader or ParagraphPdfDocumentReader.
  *
+ * When created with a {@link MessageDigest}, the bytes handed to the parser are teed into
+ * the digest, so the checksum and the Tika metadata of the resource are available after
+ * {@link #get()} without reading the resource a second time. {@link #read(ContentHandler)}
+ * streams the extracted text to a handler instead of holding it in memory.
+ *
  * @author Christian Tzolov
  */
 
@@ -44,7 +51,7 @@ public class OCRTikaDocumentReader implements DocumentReader {
 	/**
 	 * Parser to automatically detect the type of document and extract text.
 	 */
-	private final AutoDetectParser parser;
+	private final Parser parser;
 
 	/**
 	 * Handler to manage content extraction.
@@ -71,29 +78,43 @@ public class OCRTikaDocumentReader implements DocumentReader {
 	 */
 	private final ExtractedTextFormatter textFormatter;
 
+	/**
+	 * Optional digest fed with every byte of the resource while it is parsed.
+	 */
+	private final MessageDigest digest;
+
+	/**
+	 * Hex encoded digest of the resource, available after {@link #get()}.
+	 */
+	private String checksum;
+
 	/**
 	 * Constructor initializing the reader with a given resource URL.
 	 * @param resourceUrl URL to the resource
+	 * @param parserRegistry Registry providing the shared parser and the parse context
 	 */
-	public OCRTikaDocumentReader(String resourceUrl) {
-		this(resourceUrl, ExtractedTextFormatter.defaults());
+	public OCRTikaDocumentReader(String resourceUrl, TikaParserRegistry parserRegistry) {
+		this(resourceUrl, parserRegistry, ExtractedTextFormatter.defaults());
 	}
 
 	/**
 	 * Constructor initializing the reader with a given resource URL and a text formatter.
 	 * @param resourceUrl URL to the resource
+	 * @param parserRegistry Registry providing the shared parser and the parse context
 	 * @param textFormatter Formatter for the extracted text
 	 */
-	public OCRTikaDocumentReader(String resourceUrl, ExtractedTextFormatter textFormatter) {
-		this(new DefaultResourceLoader().getResource(resourceUrl), textFormatter);
+	public OCRTikaDocumentReader(String resourceUrl, TikaParserRegistry parserRegistry,
+			ExtractedTextFormatter textFormatter) {
+		this(new DefaultResourceLoader().getResource(resourceUrl), parserRegistry, textFormatter);
 	}
 
 	/**
 	 * Constructor initializing the reader with a resource.
 	 * @param resource Resource pointing to the document
+	 * @param parserRegistry Registry providing the shared parser and the parse context
 	 */
-	public OCRTikaDocumentReader(Resource resource) {
-		this(resource, ExtractedTextFormatter.defaults());
+	public OCRTikaDocumentReader(Resource resource, TikaParserRegistry parserRegistry) {
+		this(resource, parserRegistry, ExtractedTextFormatter.defaults());
 	}
 
 	/**
@@ -101,41 +122,62 @@ public class OCRTikaDocumentReader implements DocumentReader {
 	 * constructor will create a BodyContentHandler that allows for reading large PDFs
 	 * (constrained only by memory)
 	 * @param resource Resource pointing to the document
+	 * @param parserRegistry Registry providing the shared parser and the parse context
 	 * @param textFormatter Formatter for the extracted text
 	 */
-	public OCRTikaDocumentReader(Resource resource, ExtractedTextFormatter textFormatter) {
-		this(resource, new BodyContentHandler(-1), textFormatter);
+	public OCRTikaDocumentReader(Resource resource, TikaParserRegistry parserRegistry,
+			ExtractedTextFormatter textFormatter) {
+		this(resource, parserRegistry, new BodyContentHandler(-1), textFormatter);
 	}
 
 	/**
 	 * Constructor initializing the reader with a resource, content handler, and a text
 	 * formatter.
 	 * @param resource Resource pointing to the document
+	 * @param parserRegistry Registry providing the shared parser and the parse context
 	 * @param contentHandler Handler to manage content extraction
 	 * @param textFormatter Formatter for the extracted text
 	 */
-	public OCRTikaDocumentReader(Resource resource, ContentHandler contentHandler, ExtractedTextFormatter textFormatter) {
-		// For PDF files, enable image extraction
-		PDFParserConfig pdfConfig = new PDFParserConfig();
-		pdfConfig.setExtractInlineImages(true);// extractInlineImages
-		pdfConfig.setOcrStrategy(PDFParserConfig.OCR_STRATEGY.OCR_ONLY);
-
-		TesseractOCRConfig ocrConfig = new TesseractOCRConfig();
-		ocrConfig.setLanguage("eng");
-
-		ParseContext parseContext = new ParseContext();
-		parseContext.set(TesseractOCRConfig.class, ocrConfig);
-		parseContext.set(PDFParserConfig.class, pdfConfig);
+	public OCRTikaDocumentReader(Resource resource, TikaParserRegistry parserRegistry, ContentHandler contentHandler,
+			ExtractedTextFormatter textFormatter) {
+		this(resource, parserRegistry, contentHandler, textFormatter, null, null);
+	}
 
-		parseContext.set(Parser.class, new AutoDetectParser());
+	/**
+	 * Constructor initializing the reader with a resource of a known media type and a digest
+	 * that is updated with the content of the resource while it is parsed.
+	 * @param resource Resource pointing to the document
+	 * @param parserRegistry Registry providing the shared parser and the parse context
+	 * @param mimeType Detected media type of the resource, may be null
+	 * @param digest Digest to compute the checksum of the resource, may be null
+	 */
+	public OCRTikaDocumentReader(Resource resource, TikaParserRegistry parserRegistry, String mimeType,
+			MessageDigest digest) {
+		this(resource, parserRegistry, new BodyContentHandler(-1), ExtractedTextFormatter.defaults(), mimeType, digest);
+	}
 
-		this.parser = new AutoDetectParser();
+	/**
+	 * Constructor initializing the reader with the shared parser and configuration of a
+	 * {@link TikaParserRegistry}, instead of building new ones for every resource.
+	 * @param resource Resource pointing to the document
+	 * @param parserRegistry Registry providing the parser and the parse context
+	 * @param contentHandler Handler to manage content extraction
+	 * @param textFormatter Formatter for the extracted text
+	 * @param mimeType Detected media type of the resource, may be null
+	 * @param digest Digest to compute the checksum of the resource, may be null
+	 */
+	public OCRTikaDocumentReader(Resource resource, TikaParserRegistry parserRegistry, ContentHandler contentHandler,
+			ExtractedTextFormatter textFormatter, String mimeType, MessageDigest digest) {
+		this.parser = parserRegistry.parserFor(mimeType);
 		this.handler = contentHandler;
 		this.metadata = new Metadata();
-		// this.context = new ParseContext();
-		this.context = parseContext;
+		if (mimeType != null) {
+			this.metadata.set(Metadata.CONTENT_TYPE, mimeType);
+		}
+		this.context = parserRegistry.newParseContext();
 		this.resource = resource;
 		this.textFormatter = textFormatter;
+		this.digest = digest;
 	}
 
 	/**
@@ -144,15 +186,54 @@ public class OCRTikaDocumentReader implements DocumentReader {
 	 */
 	@Override
 	public List<Document> get() {
-		try (InputStream stream = this.resource.getInputStream()) {
-			this.parser.parse(stream, this.handler, this.metadata, this.context);
-			return List.of(toDocument(this.handler.toString()));
+		parse(this.handler);
+		return List.of(toDocument(this.handler.toString()));
+	}
+
+	/**
+	 * Parses the resource into the given handler instead of buffering the extracted text.
+	 * Only the body of the document is passed on, and the handler receives it while the
+	 * resource is being read, e.g. a {@link ChunkingContentHandler}.
+	 * @param contentHandler Handler receiving the extracted text
+	 */
+	public void read(ContentHandler contentHandler) {
+		parse(new BodyContentHandler(contentHandler));
+	}
+
+	private void parse(ContentHandler contentHandler) {
+		try (InputStream stream = digestingStream(this.resource.getInputStream())) {
+			this.parser.parse(CloseShieldInputStream.wrap(stream), contentHandler, this.metadata, this.context);
+			if (this.digest != null) {
+				// Parsers may stop before the end of the stream, the checksum covers the whole resource
+				stream.transferTo(OutputStream.nullOutputStream());
+				this.checksum = FileUtils.toHexChecksum(this.digest.digest());
+			}
 		}
 		catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Returns the Tika metadata captured while parsing the resource.
+	 * @return Metadata of the resource, populated after {@link #get()}
+	 */
+	public Metadata getMetadata() {
+		return this.metadata;
+	}
+
+	/**
+	 * Returns the checksum of the resource computed while parsing it.
+	 * @return Hex encoded checksum, or null if the reader was created without a digest
+	 */
+	public String getChecksum() {
+		return this.checksum;
+	}
+
+	private InputStream digestingStream(InputStream stream) {
+		return this.digest != null ? new DigestInputStream(stream, this.digest) : stream;
+	}
+
 	/**
 	 * Converts the given text to a {@link Document}.
 	 * @param docText Text to be converted
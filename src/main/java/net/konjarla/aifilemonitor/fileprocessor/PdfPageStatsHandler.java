@@ -0,0 +1,102 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.tika.sax.ContentHandlerDecorator;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the pages of a PDF while it is parsed. Tika wraps every page in a
+ * {@code <div class="page">} and the text recognized by OCR in a {@code <div class="ocr">},
+ * so the pages that went through OCR are known without a second pass. The time spent on each
+ * page is recorded in the {@code pdf.pages.parse} timer, tagged by whether it was OCR'd.
+ */
+public class PdfPageStatsHandler extends ContentHandlerDecorator {
+    private static final String DIV = "div";
+
+    private final Timer textPageTimer;
+    private final Timer ocrPageTimer;
+    private final List<Integer> ocrPages = new ArrayList<>();
+    private int pageCount;
+    private int divDepth;
+    private int pageDepth = -1;
+    private boolean pageOcr;
+    private long pageStart;
+    private long textPageNanos;
+    private long ocrPageNanos;
+
+    public PdfPageStatsHandler(ContentHandler handler, MeterRegistry meterRegistry) {
+        super(handler);
+        this.textPageTimer = meterRegistry.timer("pdf.pages.parse", "ocr", "false");
+        this.ocrPageTimer = meterRegistry.timer("pdf.pages.parse", "ocr", "true");
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String name, Attributes atts) throws SAXException {
+        if (DIV.equals(localName)) {
+            String cssClass = atts.getValue("class");
+            if ("page".equals(cssClass)) {
+                pageCount++;
+                pageDepth = divDepth;
+                pageOcr = false;
+                pageStart = System.nanoTime();
+            } else if ("ocr".equals(cssClass) && pageDepth >= 0) {
+                pageOcr = true;
+            }
+            divDepth++;
+        }
+        super.startElement(uri, localName, name, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String name) throws SAXException {
+        if (DIV.equals(localName)) {
+            divDepth--;
+            if (divDepth == pageDepth) {
+                endPage();
+            }
+        }
+        super.endElement(uri, localName, name);
+    }
+
+    /**
+     * @return Number of pages seen so far
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return The 1-based numbers of the pages whose text was recognized by OCR
+     */
+    public List<Integer> getOcrPages() {
+        return ocrPages;
+    }
+
+    public long getTextPageMillis() {
+        return textPageNanos / 1_000_000;
+    }
+
+    public long getOcrPageMillis() {
+        return ocrPageNanos / 1_000_000;
+    }
+
+    private void endPage() {
+        long elapsed = System.nanoTime() - pageStart;
+        if (pageOcr) {
+            ocrPages.add(pageCount);
+            ocrPageNanos += elapsed;
+            ocrPageTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        } else {
+            textPageNanos += elapsed;
+            textPageTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        }
+        pageDepth = -1;
+    }
+}
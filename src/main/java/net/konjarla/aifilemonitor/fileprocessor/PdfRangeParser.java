@@ -0,0 +1,303 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.multipdf.Splitter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parses large PDFs as page ranges in parallel. The PDF is split into ranges of
+ * {@code pdf.parallel.pages-per-range} pages, each range is parsed (and OCR'd where needed)
+ * on a dedicated fork-join pool sized for CPU bound work, and the pages are replayed to the
+ * handler in page order, so chunking and page metadata work as for a sequential parse.
+ * At most {@code pdf.parallel.max-ranges-in-flight} ranges are split and parsed ahead of the
+ * range being replayed, so the text held in memory stays bounded however large the PDF is.
+ * Files smaller than {@code pdf.parallel.min-bytes} are not opened here at all.
+ */
+@Component
+@Slf4j
+public class PdfRangeParser {
+    private static final String XHTML = "http://www.w3.org/1999/xhtml";
+
+    private final TikaParserRegistry tikaParserRegistry;
+    private final MeterRegistry meterRegistry;
+    private final ForkJoinPool pool;
+    private final long minBytes;
+    private final int minPages;
+    private final int pagesPerRange;
+    private final int maxRangesInFlight;
+
+    public PdfRangeParser(TikaParserRegistry tikaParserRegistry, MeterRegistry meterRegistry,
+                          @Value("${pdf.parallel.min-bytes}") long minBytes,
+                          @Value("${pdf.parallel.min-pages}") int minPages,
+                          @Value("${pdf.parallel.pages-per-range}") int pagesPerRange,
+                          @Value("${pdf.parallel.parallelism}") int parallelism,
+                          @Value("${pdf.parallel.max-ranges-in-flight}") int maxRangesInFlight) {
+        this.tikaParserRegistry = tikaParserRegistry;
+        this.meterRegistry = meterRegistry;
+        this.minBytes = minBytes;
+        this.minPages = minPages;
+        this.pagesPerRange = pagesPerRange;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        // Enough to keep the pool busy while the head range is replayed
+        this.maxRangesInFlight = maxRangesInFlight > 0 ? maxRangesInFlight : pool.getParallelism() + 1;
+    }
+
+    /**
+     * Summary of a PDF parsed in page ranges.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class ParsedPages {
+        private final int pageCount;
+        private final List<Integer> ocrPages;
+        private final long textPageMillis;
+        private final long ocrPageMillis;
+    }
+
+    /**
+     * Parses the PDF in page ranges if it has at least {@code pdf.parallel.min-pages} pages.
+     * @param file The PDF file
+     * @param handler Receives the text of all pages in order, each wrapped in a page div
+     * @return The page summary, or empty if the PDF is small enough to be parsed sequentially
+     */
+    public Optional<ParsedPages> parse(File file, ContentHandler handler) throws IOException, SAXException {
+        // Too small to have enough pages, without reading the PDF twice
+        if (file.length() < minBytes) {
+            return Optional.empty();
+        }
+        // Loaded once, for the page count and then for splitting off each range as it is needed
+        try (PDDocument document = Loader.loadPDF(file)) {
+            int pageCount = document.getNumberOfPages();
+            if (pageCount < minPages) {
+                return Optional.empty();
+            }
+            int rangeCount = (pageCount + pagesPerRange - 1) / pagesPerRange;
+            log.info("Parsing {} pages of {} in {} ranges", pageCount, file.getName(), rangeCount);
+            Deque<Range> inFlight = new ArrayDeque<>();
+            int nextRange = 0;
+            List<Integer> ocrPages = new ArrayList<>();
+            long textPageMillis = 0;
+            long ocrPageMillis = 0;
+            try {
+                handler.startDocument();
+                while (nextRange < rangeCount || !inFlight.isEmpty()) {
+                    while (nextRange < rangeCount && inFlight.size() < maxRangesInFlight) {
+                        inFlight.add(submit(document, nextRange++ * pagesPerRange + 1));
+                    }
+                    // Replay the head range in page order while the later ones are still being parsed
+                    RangeResult range = join(inFlight.peek().result);
+                    inFlight.poll();
+                    for (String page : range.pages) {
+                        replayPage(handler, page);
+                    }
+                    ocrPages.addAll(range.ocrPages);
+                    textPageMillis += range.textPageMillis;
+                    ocrPageMillis += range.ocrPageMillis;
+                }
+                handler.endDocument();
+            } finally {
+                for (Range range : inFlight) {
+                    range.abandon();
+                }
+            }
+            return Optional.of(new ParsedPages(pageCount, ocrPages, textPageMillis, ocrPageMillis));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // Splits off the range starting at the given page and queues its parse
+    private Range submit(PDDocument document, int firstPage) throws IOException {
+        Range range = new Range(writeRange(document, firstPage));
+        range.result = CompletableFuture.supplyAsync(() -> {
+            // An abandoned range is not parsed, its file is deleted by whoever claims it first
+            if (!range.claimed.compareAndSet(false, true)) {
+                throw new CancellationException();
+            }
+            try {
+                return parseRange(range.file, firstPage);
+            } finally {
+                deleteQuietly(range.file);
+            }
+        }, pool);
+        return range;
+    }
+
+    private Path writeRange(PDDocument document, int firstPage) throws IOException {
+        Splitter splitter = new Splitter();
+        splitter.setStartPage(firstPage);
+        splitter.setEndPage(Math.min(firstPage + pagesPerRange - 1, document.getNumberOfPages()));
+        splitter.setSplitAtPage(pagesPerRange);
+        Path range = Files.createTempFile("pdf-range-", ".pdf");
+        try {
+            List<PDDocument> parts = splitter.split(document);
+            for (int i = 0; i < parts.size(); i++) {
+                try (PDDocument part = parts.get(i)) {
+                    if (i == 0) {
+                        part.save(range.toFile());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            deleteQuietly(range);
+            throw e;
+        }
+        return range;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete {}", file, e);
+        }
+    }
+
+    private RangeResult parseRange(Path range, int firstPage) {
+        PageCollector collector = new PageCollector();
+        PdfPageStatsHandler pageStats = new PdfPageStatsHandler(collector, meterRegistry);
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.CONTENT_TYPE, "application/pdf");
+        try (InputStream stream = Files.newInputStream(range)) {
+            tikaParserRegistry.parserFor("application/pdf")
+                    .parse(stream, new BodyContentHandler(pageStats), metadata, tikaParserRegistry.newParseContext());
+        } catch (Exception e) {
+            throw new CompletionException("Failed to parse pages from " + firstPage, e);
+        }
+        List<Integer> ocrPages = pageStats.getOcrPages().stream()
+                .map(page -> page + firstPage - 1)
+                .toList();
+        return new RangeResult(collector.pages, ocrPages, pageStats.getTextPageMillis(), pageStats.getOcrPageMillis());
+    }
+
+    private static void replayPage(ContentHandler handler, String page) throws SAXException {
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute("", "class", "class", "CDATA", "page");
+        handler.startElement(XHTML, "div", "div", attributes);
+        char[] text = page.toCharArray();
+        handler.characters(text, 0, text.length);
+        handler.endElement(XHTML, "div", "div");
+    }
+
+    private static RangeResult join(CompletableFuture<RangeResult> result) throws IOException {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            throw new IOException(e.getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * A range split off into its own file, parsed on the pool.
+     */
+    private static class Range {
+        private final Path file;
+        // Taken by the parse when it starts, or by abandon() so that it never starts
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private CompletableFuture<RangeResult> result;
+
+        Range(Path file) {
+            this.file = file;
+        }
+
+        // A parse already running deletes the file itself when it is done
+        void abandon() {
+            result.cancel(false);
+            if (claimed.compareAndSet(false, true)) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    private static class RangeResult {
+        private final List<String> pages;
+        private final List<Integer> ocrPages;
+        private final long textPageMillis;
+        private final long ocrPageMillis;
+
+        RangeResult(List<String> pages, List<Integer> ocrPages, long textPageMillis, long ocrPageMillis) {
+            this.pages = pages;
+            this.ocrPages = ocrPages;
+            this.textPageMillis = textPageMillis;
+            this.ocrPageMillis = ocrPageMillis;
+        }
+    }
+
+    /**
+     * Collects the text of each page div of a range.
+     */
+    private static class PageCollector extends DefaultHandler {
+        private final List<String> pages = new ArrayList<>();
+        private StringBuilder page;
+        private int divDepth;
+        private int pageDepth = -1;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("div".equals(localName)) {
+                if ("page".equals(attributes.getValue("class"))) {
+                    page = new StringBuilder();
+                    pageDepth = divDepth;
+                }
+                divDepth++;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if ("div".equals(localName)) {
+                divDepth--;
+                if (divDepth == pageDepth) {
+                    pages.add(page.toString());
+                    page = null;
+                    pageDepth = -1;
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (page != null) {
+                page.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            characters(ch, start, length);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.CompositeParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.ocr.TesseractOCRConfig;
+import org.apache.tika.parser.pdf.PDFParserConfig;
+import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Holds the Tika parsers, built once from the default {@link TikaConfig}. Creating an
+ * {@link AutoDetectParser} runs the service loader over every parser on the classpath, so the
+ * parser, the detector and the PDF/OCR configuration are shared by all parses. They are
+ * thread safe as long as each parse uses its own {@link ParseContext} from {@link #newParseContext()}.
+ */
+@Component
+@Slf4j
+public class TikaParserRegistry {
+    private static final String WARM_UP_HTML = "<html><body><p>warm up</p></body></html>";
+
+    private final AutoDetectParser parser;
+    private final Detector detector;
+    private final PDFParserConfig pdfConfig;
+    private final TesseractOCRConfig ocrConfig;
+    private final Map<MediaType, Parser> parsersByType;
+
+    public TikaParserRegistry(@Value("${tika.parser.shortcut-types}") List<String> shortcutTypes,
+                              @Value("${tika.pdf.ocr-strategy-auto}") String ocrStrategyAuto) {
+        long start = System.nanoTime();
+        TikaConfig tikaConfig = TikaConfig.getDefaultConfig();
+        this.parser = new AutoDetectParser(tikaConfig);
+        this.detector = tikaConfig.getMimeRepository();
+
+        // Extract the text layer of PDF pages and OCR only the pages with too little text.
+        // Inline images are not extracted, otherwise each would be OCR'd on its own.
+        this.pdfConfig = new PDFParserConfig();
+        pdfConfig.setExtractInlineImages(false);
+        pdfConfig.setOcrStrategy(PDFParserConfig.OCR_STRATEGY.AUTO);
+        pdfConfig.setOcrStrategyAuto(ocrStrategyAuto);
+
+        this.ocrConfig = new TesseractOCRConfig();
+        ocrConfig.setLanguage("eng");
+
+        ParseContext parseContext = new ParseContext();
+        Map<MediaType, Parser> parsers = parser.getParsers(parseContext);
+        this.parsersByType = new HashMap<>();
+        shortcutTypes.stream()
+                .map(String::trim)
+                .map(MediaType::parse)
+                .filter(Objects::nonNull)
+                .forEach(type -> {
+                    Parser typeParser = resolve(parsers.get(type), type, parseContext);
+                    if (typeParser != null) {
+                        parsersByType.put(type, typeParser);
+                    }
+                });
+        log.info("Loaded Tika parsers for {} media types in {} ms, shortcuts :: {}", parsers.size(),
+                (System.nanoTime() - start) / 1_000_000, parsersByType.keySet());
+    }
+
+    /**
+     * @return The shared parser detecting the type of each document
+     */
+    public Parser getParser() {
+        return parser;
+    }
+
+    /**
+     * Returns the parser registered for the media type, skipping detection when the type is
+     * already known. Only the types in {@code tika.parser.shortcut-types} are resolved this way,
+     * all others go through the auto detecting parser and its protections for container formats.
+     * @param mimeType The detected media type, parameters such as the charset are ignored
+     */
+    public Parser parserFor(String mimeType) {
+        MediaType mediaType = mimeType != null ? MediaType.parse(mimeType) : null;
+        if (mediaType == null) {
+            return parser;
+        }
+        Parser typeParser = parsersByType.get(mediaType.getBaseType());
+        return typeParser != null ? typeParser : parser;
+    }
+
+    /**
+     * Creates the per parse context carrying the shared PDF and OCR configuration. Embedded
+     * documents are parsed with the shared auto detecting parser.
+     */
+    public ParseContext newParseContext() {
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(TesseractOCRConfig.class, ocrConfig);
+        parseContext.set(PDFParserConfig.class, pdfConfig);
+        parseContext.set(Parser.class, parser);
+        return parseContext;
+    }
+
+    /**
+     * Detects the media type of a file from its name and leading bytes, without parsing it.
+     * @param file The file to inspect
+     * @return The detected media type, e.g. {@code application/pdf}
+     */
+    public String detect(File file) throws IOException {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.getName());
+        try (TikaInputStream stream = TikaInputStream.get(file.toPath())) {
+            return detector.detect(stream, metadata).toString();
+        }
+    }
+
+    // Composite parsers (the default parser bundles all others) dispatch on the Content-Type, unwrap to the leaf
+    private static Parser resolve(Parser typeParser, MediaType type, ParseContext parseContext) {
+        while (typeParser instanceof CompositeParser composite) {
+            Parser nested = composite.getParsers(parseContext).get(type);
+            if (nested == null || nested == composite) {
+                break;
+            }
+            typeParser = nested;
+        }
+        return typeParser;
+    }
+
+    /**
+     * Parses a tiny document at startup, so the first real file does not pay for class loading
+     * and the lazy initialization inside the parsers.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long start = System.nanoTime();
+        try {
+            Metadata metadata = new Metadata();
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, "warm-up.html");
+            parser.parse(new ByteArrayInputStream(WARM_UP_HTML.getBytes(StandardCharsets.UTF_8)),
+                    new BodyContentHandler(), metadata, newParseContext());
+            log.info("Tika warm-up finished in {} ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            log.warn("Tika warm-up failed", e);
+        }
+    }
+}
@@ -3,17 +3,19 @@ package net.konjarla.aifilemonitor.llm;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.konjarla.aifilemonitor.fileprocessor.ImagePreprocessor;
+import net.konjarla.aifilemonitor.tools.model.BatchFileClassification;
 import net.konjarla.aifilemonitor.tools.model.FileClassification;
+import net.konjarla.aifilemonitor.transport.RetryBackoff;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.content.Media;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.stereotype.Service;
-import org.springframework.util.MimeTypeUtils;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 
 @Service
@@ -24,14 +26,24 @@ public class LlmService {
     private final ChatClient photoChatClient;
     @NonNull
     private final ChatClient openAiclassificationChatClient;
+    @NonNull
+    private final ChatClient openAiBatchClassificationChatClient;
+    @NonNull
+    private final RetryBackoff retryBackoff;
 
-    public FileClassification processPhotoContents(File file) {
+    /**
+     * Describes and classifies an image with the vision model.
+     * @param file The image file, used for logging
+     * @param image The image prepared for the vision model
+     */
+    public FileClassification processPhotoContents(File file, ImagePreprocessor.PreparedImage image) {
         int tryCount = 0;
+        Exception lastError = null;
         while (tryCount < 3) {
             try {
                 UserMessage userMessage = UserMessage.builder()
                         .text("Explain what do you see on this picture?")
-                        .media(new Media(MimeTypeUtils.IMAGE_PNG, getResourceFromFile(file)))
+                        .media(new Media(image.getMimeType(), new ByteArrayResource(image.getBytes())))
                         .build();
                 FileClassification response = photoChatClient
                         .prompt(new Prompt(List.of(userMessage)))
@@ -41,16 +53,21 @@ public class LlmService {
                 assert response != null;
                 return response;
             } catch (Exception e) {
+                lastError = e;
                 log.error("Error processing image: {}", file, e);
                 log.info("Processed Image. Retrying...{} of 3", tryCount);
                 tryCount++;
+                if (tryCount < 3 && !retryBackoff.pause(tryCount)) {
+                    break;
+                }
             }
         }
-        throw new RuntimeException("Failed to process image after 3 tries");
+        throw new RuntimeException("Failed to process image after 3 tries", lastError);
     }
 
     public FileClassification classifyText(String text) {
         int tryCount = 0;
+        Exception lastError = null;
         while (tryCount < 3) {
             try {
                 UserMessage userMessage = UserMessage.builder()
@@ -63,15 +80,63 @@ public class LlmService {
                 assert response != null;
                 return response;
             } catch (Exception e) {
+                lastError = e;
                 log.error("Error processing text: {}", text, e);
                 log.info("Processed text. Retrying...{} of 3", tryCount);
                 tryCount++;
+                if (tryCount < 3 && !retryBackoff.pause(tryCount)) {
+                    break;
+                }
             }
         }
-        throw new RuntimeException("Failed to process text after 3 tries");
+        throw new RuntimeException("Failed to process text after 3 tries", lastError);
     }
 
-    private Resource getResourceFromFile(File file) {
-        return new FileSystemResource(file);
+    /**
+     * Classifies several texts with a single chat completion. Each text is sent as an indexed
+     * chunk and the model answers with one result per index.
+     * @param texts The texts to classify
+     * @return One classification per text, in order, {@code null} where the model returned none
+     */
+    public List<FileClassification> classifyTexts(List<String> texts) {
+        StringBuilder prompt = new StringBuilder();
+        for (int i = 0; i < texts.size(); i++) {
+            prompt.append("<chunk index=\"").append(i).append("\">\n")
+                    .append(texts.get(i))
+                    .append("\n</chunk>\n");
+        }
+        int tryCount = 0;
+        Exception lastError = null;
+        while (tryCount < 3) {
+            try {
+                UserMessage userMessage = UserMessage.builder()
+                        .text(prompt.toString())
+                        .build();
+                BatchFileClassification response = openAiBatchClassificationChatClient
+                        .prompt(new Prompt(List.of(userMessage)))
+                        .call()
+                        .entity(BatchFileClassification.class);
+                assert response != null;
+                FileClassification[] classifications = new FileClassification[texts.size()];
+                if (response.getResults() != null) {
+                    response.getResults().stream()
+                            .filter(result -> result.getIndex() != null
+                                    && result.getIndex() >= 0 && result.getIndex() < texts.size())
+                            .forEach(result -> classifications[result.getIndex()] = FileClassification.builder()
+                                    .classifications(result.getClassifications())
+                                    .build());
+                }
+                return Arrays.asList(classifications);
+            } catch (Exception e) {
+                lastError = e;
+                log.error("Error classifying batch of {} texts", texts.size(), e);
+                log.info("Processed batch. Retrying...{} of 3", tryCount);
+                tryCount++;
+                if (tryCount < 3 && !retryBackoff.pause(tryCount)) {
+                    break;
+                }
+            }
+        }
+        throw new RuntimeException("Failed to classify batch after 3 tries", lastError);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,92 @@
+package net.konjarla.aifilemonitor.llm;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the Ollama models on each of their hosts at startup, with their {@code keep_alive}, so
+ * the first files do not pay for the model load. A generate request without a prompt and an
+ * embed request without input only load the model. The warm-up runs in the background while the
+ * startup scan begins; requests arriving meanwhile wait for the load on the host as they would anyway.
+ */
+@Component
+@Slf4j
+public class OllamaModelWarmer {
+    private final RestClient restClient;
+    private final boolean enabled;
+    private final List<Warmup> warmups;
+
+    public OllamaModelWarmer(@Qualifier("ollamaRequestFactory") ClientHttpRequestFactory ollamaRequestFactory,
+                             @Value("${ollama.warm-up.enabled}") boolean enabled,
+                             @Value("${ollama.chat.model}") String chatModel,
+                             @Value("${ollama.photo.chat.model}") String photoModel,
+                             @Value("${ollama.embedding.model}") String embeddingModel,
+                             @Value("${ollama.keep-alive.chat}") String chatKeepAlive,
+                             @Value("${ollama.keep-alive.photo}") String photoKeepAlive,
+                             @Value("${ollama.keep-alive.embedding}") String embeddingKeepAlive,
+                             @Value("${ollama.routes.chat}") List<String> chatHosts,
+                             @Value("${ollama.routes.photo}") List<String> photoHosts,
+                             @Value("${ollama.routes.embedding}") List<String> embeddingHosts) {
+        this.restClient = RestClient.builder().requestFactory(ollamaRequestFactory).build();
+        this.enabled = enabled;
+        this.warmups = List.of(
+                new Warmup(embeddingModel, embeddingKeepAlive, embeddingHosts, "/api/embed"),
+                new Warmup(photoModel, photoKeepAlive, photoHosts, "/api/generate"),
+                new Warmup(chatModel, chatKeepAlive, chatHosts, "/api/generate"));
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        for (Warmup warmup : warmups) {
+            for (String host : warmup.hosts) {
+                Thread.ofVirtual().name("Ollama-Warmup").start(() -> warmUp(warmup, host.trim()));
+            }
+        }
+    }
+
+    private void warmUp(Warmup warmup, String host) {
+        long start = System.nanoTime();
+        Map<String, Object> body = "/api/embed".equals(warmup.path)
+                ? Map.of("model", warmup.model, "input", List.of(), "keep_alive", warmup.keepAlive)
+                : Map.of("model", warmup.model, "keep_alive", warmup.keepAlive);
+        try {
+            restClient.post()
+                    .uri(host + warmup.path)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(body)
+                    .retrieve()
+                    .toBodilessEntity();
+            log.info("Loaded {} on {} in {} ms, keep alive {}", warmup.model, host,
+                    (System.nanoTime() - start) / 1_000_000, warmup.keepAlive);
+        } catch (Exception e) {
+            log.warn("Could not load {} on {}: {}", warmup.model, host, e.getMessage());
+        }
+    }
+
+    private static class Warmup {
+        private final String model;
+        private final String keepAlive;
+        private final List<String> hosts;
+        private final String path;
+
+        Warmup(String model, String keepAlive, List<String> hosts, String path) {
+            this.model = model;
+            this.keepAlive = keepAlive;
+            this.hosts = hosts;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package net.konjarla.aifilemonitor.monitoring.model;
+
+/**
+ * State of a file in the ingestion job journal.
+ */
+public enum JobState {
+    // Waiting for a parse slot
+    QUEUED,
+    // Being parsed, its first chunks may already be enriched and written
+    PARSING,
+    // Parsed, the last chunk batches are being classified, embedded and written
+    EMBEDDING,
+    DONE,
+    // Failed, retried with backoff until the attempts are used up
+    FAILED;
+
+    public boolean isFinished() {
+        return this == DONE || this == FAILED;
+    }
+}
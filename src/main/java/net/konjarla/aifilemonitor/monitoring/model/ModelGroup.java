@@ -0,0 +1,11 @@
+package net.konjarla.aifilemonitor.monitoring.model;
+
+/**
+ * The models on the inference host an ingestion task needs, see {@code PriorityTaskScheduler}.
+ */
+public enum ModelGroup {
+    // Images, described by the vision model
+    VISION,
+    // Everything else, chunked and embedded
+    TEXT
+}
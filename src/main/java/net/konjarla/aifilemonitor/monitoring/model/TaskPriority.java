@@ -0,0 +1,13 @@
+package net.konjarla.aifilemonitor.monitoring.model;
+
+/**
+ * Scheduling class of an ingestion task, see {@code PriorityTaskScheduler}.
+ */
+public enum TaskPriority {
+    // Files created or modified while the application runs
+    INTERACTIVE,
+    // Startup scan and directory indexing
+    BACKFILL,
+    // Retries and other background upkeep
+    MAINTENANCE
+}
@@ -0,0 +1,125 @@
+package net.konjarla.aifilemonitor.monitoring.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the watch events of each path until the path has been quiet for
+ * {@code file.watch.coalesce.quiet-period}, then hands one net action to the {@link FileIndexService}.
+ * An editor saving a file or a large file being copied emits many modify events, which become a
+ * single index run once the writes are over. Sequences collapse by whether the path existed before
+ * the first event and after the last one: created then deleted is nothing, deleted then created
+ * is an index run. A path changing without a pause is handled after {@code file.watch.coalesce.max-delay}.
+ */
+@Service
+@Slf4j
+public class FileEventCoalescer {
+    private final FileIndexService fileIndexService;
+    private final long quietPeriodNanos;
+    private final long maxDelayNanos;
+    private final Map<Path, PendingEvents> pending = new ConcurrentHashMap<>();
+    private final Counter received;
+    private final Counter suppressed;
+    private final Counter dispatched;
+
+    public FileEventCoalescer(FileIndexService fileIndexService,
+                              MeterRegistry meterRegistry,
+                              @Value("${file.watch.coalesce.quiet-period}") Duration quietPeriod,
+                              @Value("${file.watch.coalesce.max-delay}") Duration maxDelay) {
+        this.fileIndexService = fileIndexService;
+        this.quietPeriodNanos = quietPeriod.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.received = meterRegistry.counter("file.watch.events", "result", "received");
+        this.suppressed = meterRegistry.counter("file.watch.events", "result", "suppressed");
+        this.dispatched = meterRegistry.counter("file.watch.events", "result", "dispatched");
+        Gauge.builder("file.watch.pending", pending, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Records a create, modify or delete event of the path.
+     */
+    public void onEvent(WatchEvent.Kind<?> kind, Path path) {
+        received.increment();
+        boolean exists = kind != StandardWatchEventKinds.ENTRY_DELETE;
+        long now = System.nanoTime();
+        pending.compute(path, (p, events) -> events == null
+                ? new PendingEvents(kind != StandardWatchEventKinds.ENTRY_CREATE, exists, 1, now, now)
+                : new PendingEvents(events.existedBefore, exists, events.count + 1, events.firstAt, now));
+    }
+
+    /**
+     * Dispatches the net action of each path that has been quiet long enough.
+     */
+    @Scheduled(fixedDelayString = "${file.watch.coalesce.poll-interval}")
+    public void flush() {
+        long now = System.nanoTime();
+        pending.forEach((path, events) -> {
+            boolean quiet = now - events.lastAt >= quietPeriodNanos;
+            boolean overdue = now - events.firstAt >= maxDelayNanos;
+            // Removed only if no event arrived meanwhile, otherwise it waits for the next flush
+            if ((quiet || overdue) && pending.remove(path, events)) {
+                dispatch(path, events);
+            }
+        });
+    }
+
+    private void dispatch(Path path, PendingEvents events) {
+        String filePath = path.toFile().getAbsolutePath();
+        try {
+            if (events.existsAfter) {
+                if (Files.isDirectory(path)) {
+                    fileIndexService.indexDirectoryRecursively(filePath);
+                } else if (Files.exists(path)) {
+                    fileIndexService.indexFile(filePath);
+                } else {
+                    // Deleted without an event reaching us yet, its delete event follows
+                    suppressed.increment(events.count);
+                    return;
+                }
+            } else if (events.existedBefore) {
+                fileIndexService.deleteFile(filePath);
+            } else {
+                log.debug("Ignoring {} created and deleted again, {} events", filePath, events.count);
+                suppressed.increment(events.count);
+                return;
+            }
+            dispatched.increment();
+            suppressed.increment(events.count - 1);
+            if (events.count > 1) {
+                log.debug("Coalesced {} events of {}", events.count, filePath);
+            }
+        } catch (Exception e) {
+            log.error("Error handling file events of " + filePath, e);
+        }
+    }
+
+    private static class PendingEvents {
+        // Whether the path existed before its first event, i.e. the first event was not a create
+        private final boolean existedBefore;
+        private final boolean existsAfter;
+        private final int count;
+        private final long firstAt;
+        private final long lastAt;
+
+        PendingEvents(boolean existedBefore, boolean existsAfter, int count, long firstAt, long lastAt) {
+            this.existedBefore = existedBefore;
+            this.existsAfter = existsAfter;
+            this.count = count;
+            this.firstAt = firstAt;
+            this.lastAt = lastAt;
+        }
+    }
+}
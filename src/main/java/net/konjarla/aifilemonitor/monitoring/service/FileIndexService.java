@@ -3,17 +3,25 @@ package net.konjarla.aifilemonitor.monitoring.service;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.konjarla.aifilemonitor.database.IngestionJob;
+import net.konjarla.aifilemonitor.monitoring.model.TaskPriority;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
 @Service
@@ -25,6 +33,17 @@ public class FileIndexService {
     ApplicationContext context;
     @NonNull
     FileProcessorTaskService fileProcessorTaskService;
+    @NonNull
+    IngestionJobService ingestionJobService;
+    @NonNull
+    TaskExecutor retryTaskExecutor;
+
+    // Set while a batch of retries is being queued, so a poll does not pick the same jobs again
+    private final AtomicBoolean retrying = new AtomicBoolean();
+
+    @Value("${ingestion.jobs.retry.batch-size}")
+    private Integer retryBatchSize;
+
     private static final Set<String> SUPPORTED_EXTENSIONS = Set.of(
             ".txt", ".pdf", ".doc", ".docx", ".xls", ".xlsx",
             ".ppt", ".pptx", ".md", ".html", ".csv", ".jpg", ".png",
@@ -32,17 +51,24 @@ public class FileIndexService {
     );
 
     private static final Set<String> IGNORED_FILES = Set.of(".DS_Store");
-    @Async("scanTaskExecutor")
+    /**
+     * Resumes the jobs the previous run left unfinished, then queues the files of the watched
+     * directories that are not in the job journal or were modified since they were last handled.
+     */
+    @Async("backfillTaskExecutor")
     public void index() {
         FileWatcherService fileWatcherService = (FileWatcherService) context.getBean("fileWatcherService");
         Set<Path> directories = new HashSet<>(fileWatcherService.getWatchedDirectories());
 
+        Map<String, Instant> handledTimes = ingestionJobService.findHandledTimes();
+        resumeUnfinishedJobs();
         directories.forEach(dir -> {
             try (Stream<Path> walk = Files.walk(dir)) {
                 walk.filter(Files::isRegularFile)
                         .filter(this::isSupportedFile)
                         .filter(path -> !IGNORED_FILES.contains(path.getFileName().toString()))
-                        .forEach(this::processFile);
+                        .filter(path -> !handledSince(handledTimes, path))
+                        .forEach(path -> processFile(path, TaskPriority.BACKFILL));
             } catch (IOException e) {
                 log.error("Error walking through directory: " + dir, e);
             }
@@ -54,7 +80,7 @@ public class FileIndexService {
      * @param directoryPath The path of the directory to index
      * @return The number of files processed
      */
-    @Async("scanTaskExecutor")
+    @Async("backfillTaskExecutor")
     public void indexDirectory(String directoryPath) {
         Path dir = Path.of(directoryPath);
         if (!Files.isDirectory(dir)) {
@@ -68,7 +94,7 @@ public class FileIndexService {
                     .filter(this::isSupportedFile)
                     .toList();
 
-            fileList.forEach(this::processFile);
+            fileList.forEach(path -> processFile(path, TaskPriority.BACKFILL));
         } catch (IOException e) {
             log.error("Error listing files in directory: " + directoryPath, e);
         }
@@ -79,7 +105,7 @@ public class FileIndexService {
      * @param directoryPath The path of the directory to index
      * @return The number of files processed
      */
-    @Async("scanTaskExecutor")
+    @Async("backfillTaskExecutor")
     public void indexDirectoryRecursively(String directoryPath) {
         Path dir = Path.of(directoryPath);
         if (!Files.isDirectory(dir)) {
@@ -93,7 +119,7 @@ public class FileIndexService {
                     .filter(path -> !IGNORED_FILES.contains(path.getFileName().toString()))
                     .toList();
 
-            fileList.forEach(this::processFile);
+            fileList.forEach(path -> processFile(path, TaskPriority.BACKFILL));
         } catch (IOException e) {
             log.error("Error walking through directory: " + directoryPath, e);
         }
@@ -121,7 +147,7 @@ public class FileIndexService {
 
         try {
             if (!IGNORED_FILES.contains(path.getFileName().toString())) {
-                processFile(path);
+                processFile(path, TaskPriority.INTERACTIVE);
             }
             else {
                 log.warn("File ignored: {}", filePath);
@@ -141,17 +167,85 @@ public class FileIndexService {
         }
     }
 
+    /**
+     * Queues the failed jobs whose backoff has elapsed again. Queueing blocks while the maintenance
+     * queue is full, so it runs on the retry executor; a poll while the previous batch is still being
+     * queued is skipped, the jobs not queued yet stay due for the next one.
+     */
+    @Scheduled(fixedDelayString = "${ingestion.jobs.retry.poll-interval}",
+            initialDelayString = "${ingestion.jobs.retry.poll-interval}")
+    public void retryFailedJobs() {
+        if (!retrying.compareAndSet(false, true)) {
+            log.debug("Previous retries are still being queued, skipping this poll");
+            return;
+        }
+        try {
+            retryTaskExecutor.execute(() -> {
+                try {
+                    queueDueRetries();
+                } finally {
+                    retrying.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            retrying.set(false);
+            log.error("Failed to queue retries", e);
+        }
+    }
+
+    private void queueDueRetries() {
+        for (IngestionJob job : ingestionJobService.findDueRetries(retryBatchSize)) {
+            File file = new File(job.getFilePath());
+            if (!file.exists()) {
+                ingestionJobService.removed(job.getFilePath());
+                continue;
+            }
+            log.info("Retrying {} after {} failed attempts: {}", job.getFilePath(), job.getAttempts(),
+                    job.getLastError());
+            fileProcessorTaskService.performAsyncProcessFile(file, TaskPriority.MAINTENANCE);
+        }
+    }
+
+    private void resumeUnfinishedJobs() {
+        int[] resumed = {0};
+        ingestionJobService.forEachUnfinished(job -> {
+            File file = new File(job.getFilePath());
+            if (!file.exists()) {
+                ingestionJobService.removed(job.getFilePath());
+                return;
+            }
+            resumed[0]++;
+            fileProcessorTaskService.performAsyncProcessFile(file, job.getPriority());
+        });
+        if (resumed[0] > 0) {
+            log.info("Resumed {} unfinished ingestion jobs", resumed[0]);
+        }
+    }
+
+    private static boolean handledSince(Map<String, Instant> handledTimes, Path path) {
+        Instant handled = handledTimes.get(path.toAbsolutePath().toString());
+        if (handled == null) {
+            return false;
+        }
+        try {
+            // Millisecond precision, as the modification time recorded when the parse started
+            return !Instant.ofEpochMilli(Files.getLastModifiedTime(path).toMillis()).isAfter(handled);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     private boolean isSupportedFile(Path filePath) {
         String fileName = filePath.getFileName().toString().toLowerCase();
         return SUPPORTED_EXTENSIONS.stream().anyMatch(fileName::endsWith);
     }
 
     //@Async("scanTaskExecutor")
-    private void processFile(Path filePath) {
+    private void processFile(Path filePath, TaskPriority priority) {
         try {
             File file = filePath.toFile();
             log.info("Indexing file: {}", file.getAbsolutePath());
-            fileProcessorTaskService.performAsyncProcessFile(file);
+            fileProcessorTaskService.performAsyncProcessFile(file, priority);
         } catch (Exception e) {
             log.error("Error processing file: " + filePath, e);
         }
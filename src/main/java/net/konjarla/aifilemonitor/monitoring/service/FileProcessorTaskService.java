@@ -5,13 +5,18 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.konjarla.aifilemonitor.fileprocessor.FileProcessor;
 import net.konjarla.aifilemonitor.monitoring.model.FileTask;
+import net.konjarla.aifilemonitor.monitoring.model.ModelGroup;
 import net.konjarla.aifilemonitor.monitoring.model.TaskRunStatus;
+import net.konjarla.aifilemonitor.monitoring.model.TaskPriority;
 import net.konjarla.aifilemonitor.monitoring.model.TaskStatus;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.time.Instant;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
 @RequiredArgsConstructor
@@ -21,26 +26,61 @@ public class FileProcessorTaskService {
     TaskService taskService;
     @NonNull
     FileProcessor fileProcessor;
+    @NonNull
+    PriorityTaskScheduler priorityTaskScheduler;
+    @NonNull
+    IngestionJobService ingestionJobService;
+    @NonNull
+    TaskExecutor enrichTaskExecutor;
+    @NonNull
+    TaskExecutor writeTaskExecutor;
 
-    @Async("indexTaskExecutor")
-    public void performAsyncProcessFile(File file) {
+    /**
+     * Queues the file for ingestion. Parsing, enrichment and writing run on their own stage
+     * executors; parse slots are handed out by priority class, and this call blocks while the
+     * queue of the class is full, which slows down the scan submitting files instead of dropping them.
+     */
+    public void performAsyncProcessFile(File file, TaskPriority priority) {
         String taskId = UUID.randomUUID().toString();
-        String threadName = Thread.currentThread().getName();
         String filePath = file.getAbsolutePath();
         FileTask fileTask = FileTask.builder()
                 .taskId(taskId)
-                .threadName(threadName)
                 .filePath(filePath)
                 .build();
-        TaskStatus taskStatus = new TaskStatus(TaskRunStatus.RUNNING, fileTask);
-        taskService.addTask(taskId, taskStatus);
-        try {
-            fileProcessor.processFile(file);
-            taskService.updateTaskWithCompletion(taskId);
-        } catch (Exception e) {
-            log.error("Error processing file: " + file.getAbsolutePath(), e);
-            taskService.updateTaskWithFailure(taskId, e.getMessage());
-        }
+        taskService.addTask(taskId, new TaskStatus(TaskRunStatus.PENDING, fileTask));
+        ingestionJobService.queued(filePath, taskId, priority);
+        CompletableFuture.supplyAsync(() -> {
+                    FileTask runningTask = FileTask.builder()
+                            .taskId(taskId)
+                            .threadName(Thread.currentThread().getName())
+                            .filePath(filePath)
+                            .build();
+                    taskService.addTask(taskId, new TaskStatus(TaskRunStatus.RUNNING, runningTask));
+                    ingestionJobService.parsing(filePath, Instant.ofEpochMilli(file.lastModified()));
+                    try {
+                        return fileProcessor.processFile(file, false, enrichTaskExecutor, writeTaskExecutor);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, priorityTaskScheduler.executor(priority,
+                        FileProcessor.isImage(file) ? ModelGroup.VISION : ModelGroup.TEXT))
+                .thenCompose(written -> {
+                    if (!written.isDone()) {
+                        ingestionJobService.embedding(filePath);
+                    }
+                    return written;
+                })
+                .whenComplete((result, e) -> {
+                    if (e == null) {
+                        taskService.updateTaskWithCompletion(taskId);
+                        ingestionJobService.done(filePath);
+                    } else {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        log.error("Error processing file: " + filePath, cause);
+                        taskService.updateTaskWithFailure(taskId, cause.getMessage());
+                        ingestionJobService.failed(filePath, String.valueOf(cause.getMessage()));
+                    }
+                });
     }
 
     public void performAsyncDeleteFile(File file) {
@@ -56,6 +96,7 @@ public class FileProcessorTaskService {
         taskService.addTask(taskId, taskStatus);
         try {
             fileProcessor.removeFile(file);
+            ingestionJobService.removed(filePath);
             taskService.updateTaskWithCompletion(taskId);
         } catch (Exception e) {
             log.error("Error deleting file: " + file.getAbsolutePath(), e);
@@ -25,7 +25,7 @@ public class FileWatcherService {
     private final Map<Path, WatchKey> pathToWatchKey;
     private final Map<WatchKey, Path> watchKeyToPath;
     private final List<Path> directoriesToWatch;
-    private final FileIndexService fileIndexService;
+    private final FileEventCoalescer fileEventCoalescer;
 
     /**
      * Creates a new FileWatcherService with the specified directories to watch.
@@ -34,8 +34,8 @@ public class FileWatcherService {
      * @throws IOException if the WatchService cannot be created or no valid directories are provided
      */
     public FileWatcherService(@Value("${file.watch.directories}") List<String> directoryPaths, @Autowired
-    FileIndexService fileIndexService) throws IOException {
-        this.fileIndexService = fileIndexService;
+    FileEventCoalescer fileEventCoalescer) throws IOException {
+        this.fileEventCoalescer = fileEventCoalescer;
         this.watchService = FileSystems.getDefault().newWatchService();
         this.pathToWatchKey = new HashMap<>();
         this.watchKeyToPath = new HashMap<>();
@@ -164,22 +164,12 @@ public class FileWatcherService {
         try {
             Path fullPath = dir.resolve((Path) event.context());
             System.out.printf("Processing %s event for: %s%n", event.kind(), fullPath);
-            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
-                if(fullPath.toFile().isDirectory()) {
-                    registerDirectory(fullPath);
-                    fileIndexService.indexDirectoryRecursively(fullPath.toFile().getAbsolutePath());
-                } else {
-                    fileIndexService.indexFile(fullPath.toFile().getAbsolutePath());
-                }
-            } else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
-                if(fullPath.toFile().isDirectory()) {
-                    fileIndexService.indexDirectoryRecursively(fullPath.toFile().getAbsolutePath());
-                } else {
-                    fileIndexService.indexFile(fullPath.toFile().getAbsolutePath());
-                }
-            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
-                fileIndexService.deleteFile(fullPath.toFile().getAbsolutePath());
+            // New directories are watched right away, so the events of their files are not missed
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && fullPath.toFile().isDirectory()) {
+                registerDirectory(fullPath);
             }
+            // Indexing and deletion wait until the path has been quiet for a while, see FileEventCoalescer
+            fileEventCoalescer.onEvent(event.kind(), fullPath);
             // Your event handling logic here
             // For example:
             // if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
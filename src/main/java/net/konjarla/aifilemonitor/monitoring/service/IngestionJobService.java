@@ -0,0 +1,136 @@
+package net.konjarla.aifilemonitor.monitoring.service;
+
+import lombok.extern.slf4j.Slf4j;
+import net.konjarla.aifilemonitor.database.IngestionJob;
+import net.konjarla.aifilemonitor.database.IngestionJobRepository;
+import net.konjarla.aifilemonitor.monitoring.model.JobState;
+import net.konjarla.aifilemonitor.monitoring.model.TaskPriority;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Records the progress of each file in the {@code ingestion_jobs} table, so a restart resumes
+ * the files that were queued or running, skips the ones already done and retries failures
+ * with backoff. Journal writes that fail are logged and do not fail the ingestion itself.
+ */
+@Service
+@Slf4j
+public class IngestionJobService {
+    private static final int PAGE_SIZE = 1000;
+
+    private final IngestionJobRepository ingestionJobRepository;
+    private final int maxAttempts;
+    private final Duration backoffBase;
+    private final Duration backoffMax;
+
+    public IngestionJobService(IngestionJobRepository ingestionJobRepository,
+                               @Value("${ingestion.jobs.retry.max-attempts}") int maxAttempts,
+                               @Value("${ingestion.jobs.retry.backoff-base}") Duration backoffBase,
+                               @Value("${ingestion.jobs.retry.backoff-max}") Duration backoffMax) {
+        this.ingestionJobRepository = ingestionJobRepository;
+        this.maxAttempts = maxAttempts;
+        this.backoffBase = backoffBase;
+        this.backoffMax = backoffMax;
+    }
+
+    public void queued(String filePath, String taskId, TaskPriority priority) {
+        record(filePath, () -> ingestionJobRepository.queue(filePath, taskId, priority));
+    }
+
+    /**
+     * @param sourceModifiedAt Modification time of the file as the parse starts, changes after it are not indexed
+     */
+    public void parsing(String filePath, Instant sourceModifiedAt) {
+        record(filePath, () -> ingestionJobRepository.parsing(filePath, sourceModifiedAt));
+    }
+
+    public void embedding(String filePath) {
+        record(filePath, () -> ingestionJobRepository.updateState(filePath, JobState.EMBEDDING));
+    }
+
+    public void done(String filePath) {
+        record(filePath, () -> ingestionJobRepository.done(filePath));
+    }
+
+    public void failed(String filePath, String error) {
+        record(filePath, () -> ingestionJobRepository.failed(filePath, error,
+                backoffBase.toSeconds(), backoffMax.toSeconds()));
+    }
+
+    public void removed(String filePath) {
+        record(filePath, () -> ingestionJobRepository.delete(filePath));
+    }
+
+    public Optional<IngestionJob> findByTaskId(String taskId) {
+        return ingestionJobRepository.findByTaskId(taskId);
+    }
+
+    /**
+     * Returns the version of each known file that was last handled: its modification time when the
+     * last parse of a done or failed job started, and {@link Instant#MAX} for jobs still to be resumed.
+     * A scan can skip a file not modified since, it is either up to date or taken care of by the
+     * resume and the retries. A file modified while it was parsed is newer and is queued again.
+     */
+    public Map<String, Instant> findHandledTimes() {
+        Map<String, Instant> handled = new HashMap<>();
+        ingestionJobRepository.forEach(PAGE_SIZE, job -> handled.put(job.getFilePath(), switch (job.getState()) {
+            // Jobs journaled before the snapshot was recorded fall back to when they were handled
+            case DONE -> job.getSourceModifiedAt() != null ? job.getSourceModifiedAt() : job.getCompletedAt();
+            case FAILED -> job.getSourceModifiedAt() != null ? job.getSourceModifiedAt() : job.getUpdatedAt();
+            default -> Instant.MAX;
+        }));
+        return handled;
+    }
+
+    /**
+     * Passes the jobs left queued or running by the previous run to the consumer.
+     */
+    public void forEachUnfinished(Consumer<IngestionJob> consumer) {
+        ingestionJobRepository.forEachUnfinished(PAGE_SIZE, consumer);
+    }
+
+    /**
+     * @return Failed jobs with attempts left whose backoff has elapsed
+     */
+    public List<IngestionJob> findDueRetries(int limit) {
+        return ingestionJobRepository.findDueRetries(maxAttempts, limit);
+    }
+
+    public List<IngestionJob> getJobs(JobState state, int page, int size) {
+        return ingestionJobRepository.findPage(state, page * size, size);
+    }
+
+    /**
+     * @return Number of jobs per state, the total and the share of finished jobs
+     */
+    public Map<String, Object> getProgress() {
+        Map<JobState, Long> counts = ingestionJobRepository.countByState();
+        long total = counts.values().stream().mapToLong(Long::longValue).sum();
+        long finished = counts.entrySet().stream()
+                .filter(entry -> entry.getKey().isFinished())
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("states", counts);
+        progress.put("total", total);
+        progress.put("percentFinished", total == 0 ? 100.0 : Math.round(finished * 1000.0 / total) / 10.0);
+        return progress;
+    }
+
+    private static void record(String filePath, Runnable update) {
+        try {
+            update.run();
+        } catch (Exception e) {
+            log.warn("Could not update the ingestion job of {}", filePath, e);
+        }
+    }
+}
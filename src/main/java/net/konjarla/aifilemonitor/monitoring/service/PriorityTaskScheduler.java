@@ -0,0 +1,323 @@
+package net.konjarla.aifilemonitor.monitoring.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.konjarla.aifilemonitor.monitoring.model.ModelGroup;
+import net.konjarla.aifilemonitor.monitoring.model.TaskPriority;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands the parse slots to ingestion tasks by priority class instead of in arrival order, so a
+ * file saved during a backfill does not wait behind the whole scan.
+ * <ul>
+ *     <li>Each class has its own bounded queue; submitting to a full queue blocks the caller,
+ *     which throttles the startup scan the way the parse queue did before.</li>
+ *     <li>When several classes wait, slots are shared in proportion to their {@code weight}
+ *     (stride scheduling), and no class runs more than {@code max-running} tasks at once.</li>
+ *     <li>A task waiting longer than the {@code max-wait} of its class is dispatched next, so
+ *     a steady stream of interactive files cannot starve the backfill.</li>
+ *     <li>Within a class, tasks needing the models of the last dispatched task go first, up to
+ *     {@code ingestion.model-grouping.max-run} in a row, so the inference host processes runs of
+ *     images and runs of text instead of swapping the vision and text models for every file.</li>
+ * </ul>
+ * Dispatched tasks run on the parse executor, which never holds more tasks than it has workers.
+ */
+@Service
+@Slf4j
+public class PriorityTaskScheduler {
+    private final TaskExecutor parseTaskExecutor;
+    private final Map<TaskPriority, PriorityClass> classes = new EnumMap<>(TaskPriority.class);
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when a task is queued or a slot frees up
+    private final Condition dispatchable = lock.newCondition();
+    // Signalled when a task leaves a queue
+    private final Condition queueSpace = lock.newCondition();
+    private final Thread dispatcher;
+    private final int maxRun;
+    private int freeSlots;
+    // Pass of the last dispatched class; a class becoming busy starts here instead of with saved up credit
+    private double virtualTime;
+    // Models of the last dispatched task, and the tasks dispatched for them in a row
+    private ModelGroup currentGroup = ModelGroup.TEXT;
+    private int runLength;
+    private long modelSwitches;
+    private volatile boolean running = true;
+
+    public PriorityTaskScheduler(@Qualifier("parseTaskExecutor") TaskExecutor parseTaskExecutor,
+                                 @Value("${ingestion.parse.workers}") int parseWorkers,
+                                 @Value("${ingestion.model-grouping.max-run}") int maxRun,
+                                 Environment environment,
+                                 MeterRegistry meterRegistry) {
+        this.parseTaskExecutor = parseTaskExecutor;
+        this.freeSlots = parseWorkers;
+        this.maxRun = Math.max(1, maxRun);
+        for (TaskPriority priority : TaskPriority.values()) {
+            String prefix = "ingestion.priority." + priority.name().toLowerCase() + ".";
+            PriorityClass priorityClass = new PriorityClass(
+                    environment.getRequiredProperty(prefix + "weight", Integer.class),
+                    environment.getRequiredProperty(prefix + "max-running", Integer.class),
+                    environment.getRequiredProperty(prefix + "max-wait", Duration.class),
+                    environment.getRequiredProperty(prefix + "queue-capacity", Integer.class),
+                    meterRegistry.timer("ingestion.schedule.wait", "priority", priority.name()));
+            classes.put(priority, priorityClass);
+            Gauge.builder("ingestion.schedule.queued", priorityClass, PriorityClass::size)
+                    .tag("priority", priority.name())
+                    .register(meterRegistry);
+        }
+        this.dispatcher = new Thread(this::dispatchLoop, "Priority-Dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * @return An executor queueing its tasks in the given priority class
+     */
+    public Executor executor(TaskPriority priority, ModelGroup modelGroup) {
+        return task -> submit(priority, modelGroup, task);
+    }
+
+    /**
+     * Queues the task in its priority class, blocking while the queue of the class is full.
+     */
+    public void submit(TaskPriority priority, ModelGroup modelGroup, Runnable task) {
+        PriorityClass priorityClass = classes.get(priority);
+        lock.lock();
+        try {
+            while (priorityClass.size() >= priorityClass.queueCapacity) {
+                if (!running) {
+                    throw new RejectedExecutionException("Scheduler is shut down");
+                }
+                queueSpace.await();
+            }
+            if (priorityClass.size() == 0) {
+                priorityClass.pass = Math.max(priorityClass.pass, virtualTime);
+            }
+            priorityClass.queues.get(modelGroup).add(new QueuedTask(task, modelGroup, System.nanoTime()));
+            dispatchable.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting to queue a " + priority + " task", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Per class queue depth, running tasks and queue wait times
+     */
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            classes.forEach((priority, priorityClass) -> {
+                Map<String, Object> classStats = new LinkedHashMap<>();
+                QueuedTask oldest = priorityClass.oldest();
+                classStats.put("queued", priorityClass.size());
+                classStats.put("running", priorityClass.running);
+                classStats.put("dispatched", priorityClass.dispatched);
+                classStats.put("starvationDispatches", priorityClass.starvationDispatches);
+                classStats.put("oldestWaitMillis", oldest != null ? (now - oldest.queuedAt) / 1_000_000 : 0);
+                classStats.put("meanWaitMillis", (long) priorityClass.waitTimer.mean(TimeUnit.MILLISECONDS));
+                classStats.put("maxWaitMillis", (long) priorityClass.waitTimer.max(TimeUnit.MILLISECONDS));
+                stats.put(priority.name(), classStats);
+            });
+            Map<String, Object> grouping = new LinkedHashMap<>();
+            grouping.put("currentGroup", currentGroup);
+            grouping.put("runLength", runLength);
+            grouping.put("modelSwitches", modelSwitches);
+            stats.put("MODEL_GROUPING", grouping);
+        } finally {
+            lock.unlock();
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+        lock.lock();
+        try {
+            queueSpace.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            PriorityClass priorityClass;
+            QueuedTask queuedTask;
+            lock.lock();
+            try {
+                while ((priorityClass = nextClass()) == null) {
+                    dispatchable.await();
+                }
+                queuedTask = pollTask(priorityClass);
+                priorityClass.running++;
+                priorityClass.dispatched++;
+                freeSlots--;
+                queueSpace.signalAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            priorityClass.waitTimer.record(System.nanoTime() - queuedTask.queuedAt, TimeUnit.NANOSECONDS);
+            PriorityClass dispatchedClass = priorityClass;
+            try {
+                parseTaskExecutor.execute(() -> {
+                    try {
+                        queuedTask.task.run();
+                    } finally {
+                        release(dispatchedClass);
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.error("Failed to dispatch task", e);
+                release(dispatchedClass);
+            }
+        }
+    }
+
+    private void release(PriorityClass priorityClass) {
+        lock.lock();
+        try {
+            priorityClass.running--;
+            freeSlots++;
+            dispatchable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held; the overdue class waiting longest first, else the lowest pass
+    private PriorityClass nextClass() {
+        if (freeSlots <= 0) {
+            return null;
+        }
+        long now = System.nanoTime();
+        PriorityClass overdue = null;
+        long overdueBy = 0;
+        PriorityClass next = null;
+        for (PriorityClass priorityClass : classes.values()) {
+            QueuedTask head = priorityClass.oldest();
+            if (head == null || priorityClass.running >= priorityClass.maxRunning) {
+                continue;
+            }
+            long late = now - head.queuedAt - priorityClass.maxWaitNanos;
+            if (late > overdueBy) {
+                overdue = priorityClass;
+                overdueBy = late;
+            }
+            if (next == null || priorityClass.pass < next.pass) {
+                next = priorityClass;
+            }
+        }
+        if (overdue != null) {
+            overdue.starvationDispatches++;
+            next = overdue;
+        }
+        if (next != null) {
+            virtualTime = next.pass;
+            next.pass += 1.0 / next.weight;
+        }
+        return next;
+    }
+
+    // Called with the lock held; continues the current run of the class, else takes its oldest task
+    private QueuedTask pollTask(PriorityClass priorityClass) {
+        Deque<QueuedTask> current = priorityClass.queues.get(currentGroup);
+        QueuedTask oldest = priorityClass.oldest();
+        boolean overdue = System.nanoTime() - oldest.queuedAt > priorityClass.maxWaitNanos;
+        if (!current.isEmpty() && runLength < maxRun && !overdue) {
+            runLength++;
+            return current.poll();
+        }
+        QueuedTask task = priorityClass.queues.get(oldest.modelGroup).poll();
+        if (task.modelGroup != currentGroup) {
+            currentGroup = task.modelGroup;
+            runLength = 0;
+            modelSwitches++;
+        }
+        runLength++;
+        return task;
+    }
+
+    private static class PriorityClass {
+        private final int weight;
+        private final int maxRunning;
+        private final long maxWaitNanos;
+        private final int queueCapacity;
+        private final Timer waitTimer;
+        private final Map<ModelGroup, Deque<QueuedTask>> queues = new EnumMap<>(ModelGroup.class);
+        private double pass;
+        private int running;
+        private long dispatched;
+        private long starvationDispatches;
+
+        PriorityClass(int weight, int maxRunning, Duration maxWait, int queueCapacity, Timer waitTimer) {
+            this.weight = Math.max(1, weight);
+            this.maxRunning = Math.max(1, maxRunning);
+            this.maxWaitNanos = maxWait.toNanos();
+            this.queueCapacity = Math.max(1, queueCapacity);
+            this.waitTimer = waitTimer;
+            for (ModelGroup modelGroup : ModelGroup.values()) {
+                queues.put(modelGroup, new ArrayDeque<>());
+            }
+        }
+
+        int size() {
+            int size = 0;
+            for (Deque<QueuedTask> queue : queues.values()) {
+                size += queue.size();
+            }
+            return size;
+        }
+
+        // The task queued first across the model groups
+        QueuedTask oldest() {
+            QueuedTask oldest = null;
+            for (Deque<QueuedTask> queue : queues.values()) {
+                QueuedTask head = queue.peek();
+                if (head != null && (oldest == null || head.queuedAt - oldest.queuedAt < 0)) {
+                    oldest = head;
+                }
+            }
+            return oldest;
+        }
+    }
+
+    private static class QueuedTask {
+        private final Runnable task;
+        private final ModelGroup modelGroup;
+        private final long queuedAt;
+
+        QueuedTask(Runnable task, ModelGroup modelGroup, long queuedAt) {
+            this.task = task;
+            this.modelGroup = modelGroup;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
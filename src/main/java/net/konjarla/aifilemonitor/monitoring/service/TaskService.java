@@ -4,6 +4,7 @@ import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.konjarla.aifilemonitor.monitoring.model.FileTask;
+import net.konjarla.aifilemonitor.monitoring.model.JobState;
 import net.konjarla.aifilemonitor.monitoring.model.TaskRunStatus;
 import net.konjarla.aifilemonitor.monitoring.model.TaskStatus;
 import org.springframework.core.task.TaskExecutor;
@@ -13,36 +14,47 @@ import org.springframework.stereotype.Service;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @RequiredArgsConstructor
 @Slf4j
 @Service
 public class TaskService {
     @NonNull
-    private final ConcurrentHashMap<String, TaskStatus> taskStatuses;
+    private final TaskStatusStore taskStatusStore;
     @NonNull
     TaskExecutor scanTaskExecutor;
     @NonNull
+    TaskExecutor backfillTaskExecutor;
+    @NonNull
     TaskExecutor watcherTaskExecutor;
     @NonNull
-    TaskExecutor indexTaskExecutor;
+    TaskExecutor parseTaskExecutor;
+    @NonNull
+    TaskExecutor enrichTaskExecutor;
+    @NonNull
+    TaskExecutor writeTaskExecutor;
+    @NonNull
+    PriorityTaskScheduler priorityTaskScheduler;
+    @NonNull
+    IngestionJobService ingestionJobService;
 
     public void addTask(String taskId, TaskStatus taskStatus) {
-        taskStatuses.put(taskId, taskStatus);
+        if (!taskStatusStore.put(taskId, taskStatus)) {
+            log.warn("{} status for unknown or already finished task {}", taskStatus.getStatus(), taskId);
+        }
     }
 
     public void updateTaskWithCompletion(String taskId) {
-        TaskStatus taskStatus = taskStatuses.get(taskId);
+        TaskStatus taskStatus = taskStatusStore.get(taskId);
         if (taskStatus != null) {
-            taskStatuses.put(taskId, new TaskStatus(TaskRunStatus.COMPLETED, taskStatus.getTask()));
+            taskStatusStore.put(taskId, new TaskStatus(TaskRunStatus.COMPLETED, taskStatus.getTask()));
         } else {
             log.error("Task with id {} not found", taskId);
         }
     }
 
     public void updateTaskWithFailure(String taskId, String message) {
-        TaskStatus taskStatus = taskStatuses.get(taskId);
+        TaskStatus taskStatus = taskStatusStore.get(taskId);
         if (taskStatus != null) {
             FileTask fileTask = taskStatus.getTask();
             FileTask updatedFileTask = FileTask.builder()
@@ -51,32 +63,65 @@ public class TaskService {
                     .filePath(fileTask.getFilePath())
                     .message(message)
                     .build();
-            taskStatuses.put(taskId, new TaskStatus(TaskRunStatus.FAILED, updatedFileTask));
+            taskStatusStore.put(taskId, new TaskStatus(TaskRunStatus.FAILED, updatedFileTask));
         } else {
             log.error("Task with id {} not found", taskId);
         }
     }
 
+    /**
+     * Returns the status of a task of this run, or of a task of an earlier run from the job journal.
+     */
     public TaskStatus getTaskStatus(String taskId) {
-        return taskStatuses.getOrDefault(taskId, new TaskStatus(TaskRunStatus.PENDING));
+        TaskStatus taskStatus = taskStatusStore.get(taskId);
+        if (taskStatus != null) {
+            return taskStatus;
+        }
+        return ingestionJobService.findByTaskId(taskId)
+                .map(job -> new TaskStatus(toRunStatus(job.getState()), FileTask.builder()
+                        .taskId(taskId)
+                        .filePath(job.getFilePath())
+                        .message(job.getLastError())
+                        .build()))
+                .orElseGet(() -> new TaskStatus(TaskRunStatus.PENDING));
     }
 
-    private List<TaskStatus> getTaskStatusForAll() {
-        return taskStatuses.values()
-                .stream()
-                .toList();
+    /**
+     * Lists a page of the tasks of this run, see {@link TaskStatusStore#find}, with the task counters
+     * and the executor queues.
+     * @param status Only tasks in this status, all if {@code null}
+     * @param path Only tasks whose file path contains this text, all if {@code null}
+     */
+    public Map<String, Object> getTaskStatusForAllAsync(TaskRunStatus status, String path, int page, int size) {
+        List<TaskStatus> taskStatuses = taskStatusStore.find(status, path, page * size, size);
+        Map<String, Integer> executorMap = new HashMap<>();
+        executorMap.put("scanTaskExecutor", queueSize(scanTaskExecutor));
+        executorMap.put("backfillTaskExecutor", queueSize(backfillTaskExecutor));
+        executorMap.put("watcherTaskExecutor", queueSize(watcherTaskExecutor));
+        executorMap.put("parseTaskExecutor", queueSize(parseTaskExecutor));
+        executorMap.put("enrichTaskExecutor", queueSize(enrichTaskExecutor));
+        executorMap.put("writeTaskExecutor", queueSize(writeTaskExecutor));
+        Map<String, Object> result = new HashMap<>();
+        result.put("taskStatuses", taskStatuses);
+        result.put("page", page);
+        result.put("size", size);
+        result.put("counters", taskStatusStore.getCounters());
+        result.put("executorMap", executorMap);
+        result.put("priorityMap", priorityTaskScheduler.getStats());
+        return result;
     }
 
-    public Map<String, Object> getTaskStatusForAllAsync() {
-        List<TaskStatus> taskStatuses = getTaskStatusForAll();
-        Map<String, Integer> executorMap = new HashMap<>();
-        ThreadPoolTaskExecutor scanTaskExecutor = (ThreadPoolTaskExecutor) this.scanTaskExecutor;
-        ThreadPoolTaskExecutor watcherTaskExecutor = (ThreadPoolTaskExecutor) this.watcherTaskExecutor;
-        ThreadPoolTaskExecutor indexTaskExecutor = (ThreadPoolTaskExecutor) this.indexTaskExecutor;
-        executorMap.put("scanTaskExecutor", scanTaskExecutor.getQueueSize());
-        executorMap.put("watcherTaskExecutor", watcherTaskExecutor.getQueueSize());
-        executorMap.put("indexTaskExecutor", indexTaskExecutor.getQueueSize());
-        return Map.of("taskStatuses", taskStatuses, "executorMap", executorMap);
+    private static TaskRunStatus toRunStatus(JobState state) {
+        return switch (state) {
+            case QUEUED -> TaskRunStatus.PENDING;
+            case PARSING, EMBEDDING -> TaskRunStatus.RUNNING;
+            case DONE -> TaskRunStatus.COMPLETED;
+            case FAILED -> TaskRunStatus.FAILED;
+        };
     }
-}
 
+    // Virtual thread executors have no queue, their submitters wait for a free slot instead
+    private static int queueSize(TaskExecutor executor) {
+        return executor instanceof ThreadPoolTaskExecutor pool ? pool.getQueueSize() : 0;
+    }
+}
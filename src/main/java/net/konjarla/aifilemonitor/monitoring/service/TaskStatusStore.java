@@ -0,0 +1,271 @@
+package net.konjarla.aifilemonitor.monitoring.service;
+
+import net.konjarla.aifilemonitor.monitoring.model.FileTask;
+import net.konjarla.aifilemonitor.monitoring.model.TaskRunStatus;
+import net.konjarla.aifilemonitor.monitoring.model.TaskStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps task statuses with memory bounded over time:
+ * <ul>
+ *     <li>pending and running tasks, bounded by the ingestion queues;</li>
+ *     <li>the most recent finished tasks, up to {@code task.status.recent.max-entries};</li>
+ *     <li>failed tasks for {@code task.status.failed.retention}, up to {@code task.status.failed.max-entries}.</li>
+ * </ul>
+ * Totals per status are kept in counters per executor (the thread pool that ran the task) and
+ * per MIME type (guessed from the file name), updated in constant time on each transition.
+ */
+@Component
+public class TaskStatusStore {
+    private static final Pattern THREAD_NUMBER = Pattern.compile("-?\\d+$");
+    private static final String UNKNOWN = "unknown";
+
+    private final int maxRecent;
+    private final int maxFailed;
+    private final long failedRetentionMillis;
+    private final Map<String, Entry> active = new ConcurrentHashMap<>();
+    // Both in finishing order, guarded by their own monitor
+    private final LinkedHashMap<String, Entry> recent = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Entry> failed = new LinkedHashMap<>();
+    private final Map<String, Counters> byExecutor = new ConcurrentHashMap<>();
+    private final Map<String, Counters> byMimeType = new ConcurrentHashMap<>();
+
+    public TaskStatusStore(@Value("${task.status.recent.max-entries}") int maxRecent,
+                           @Value("${task.status.failed.max-entries}") int maxFailed,
+                           @Value("${task.status.failed.retention}") Duration failedRetention) {
+        this.maxRecent = maxRecent;
+        this.maxFailed = maxFailed;
+        this.failedRetentionMillis = failedRetention.toMillis();
+    }
+
+    /**
+     * Adds a task or moves it to a new status.
+     * @return {@code false} if the task is unknown, i.e. it finished already or was never added
+     */
+    public boolean put(String taskId, TaskStatus taskStatus) {
+        Entry previous = active.get(taskId);
+        if (previous == null && taskStatus.getStatus() != TaskRunStatus.PENDING
+                && taskStatus.getStatus() != TaskRunStatus.RUNNING) {
+            return false;
+        }
+        String mimeType = previous != null ? previous.mimeType : mimeType(taskStatus.getTask());
+        String executor = executor(taskStatus.getTask());
+        if (UNKNOWN.equals(executor) && previous != null) {
+            executor = previous.executor;
+        }
+        Entry entry = new Entry(taskStatus, mimeType, executor, System.currentTimeMillis());
+        if (previous != null && previous.status.getStatus() == TaskRunStatus.RUNNING) {
+            counters(byExecutor, previous.executor).running.decrement();
+            counters(byMimeType, previous.mimeType).running.decrement();
+        }
+        switch (taskStatus.getStatus()) {
+            case PENDING -> active.put(taskId, entry);
+            case RUNNING -> {
+                active.put(taskId, entry);
+                counters(byExecutor, executor).running.increment();
+                counters(byMimeType, mimeType).running.increment();
+            }
+            case COMPLETED, FAILED -> finish(taskId, entry);
+        }
+        return true;
+    }
+
+    public TaskStatus get(String taskId) {
+        Entry entry = active.get(taskId);
+        if (entry == null) {
+            synchronized (recent) {
+                entry = recent.get(taskId);
+            }
+        }
+        if (entry == null) {
+            synchronized (failed) {
+                pruneFailed();
+                entry = failed.get(taskId);
+            }
+        }
+        return entry != null ? entry.status : null;
+    }
+
+    /**
+     * Lists tasks, pending and running ones first, then the finished ones newest first.
+     * Failed tasks are listed from the retention window, so they outlive the recent buffer.
+     * @param status Only tasks in this status, all if {@code null}
+     * @param pathFilter Only tasks whose file path contains this text, all if {@code null}
+     */
+    public List<TaskStatus> find(TaskRunStatus status, String pathFilter, int offset, int limit) {
+        List<TaskStatus> matches = new ArrayList<>();
+        if (status == null || status == TaskRunStatus.PENDING || status == TaskRunStatus.RUNNING) {
+            active.values().stream()
+                    .filter(entry -> matches(entry, status, pathFilter))
+                    .forEach(entry -> matches.add(entry.status));
+        }
+        if (status == null || status == TaskRunStatus.COMPLETED) {
+            synchronized (recent) {
+                newestFirst(recent).stream()
+                        .filter(entry -> matches(entry, status, pathFilter))
+                        .forEach(entry -> matches.add(entry.status));
+            }
+        }
+        if (status == TaskRunStatus.FAILED) {
+            synchronized (failed) {
+                pruneFailed();
+                newestFirst(failed).stream()
+                        .filter(entry -> matches(entry, status, pathFilter))
+                        .forEach(entry -> matches.add(entry.status));
+            }
+        }
+        if (offset >= matches.size()) {
+            return List.of();
+        }
+        return matches.subList(offset, Math.min(matches.size(), offset + limit));
+    }
+
+    /**
+     * @return Completed, failed and running counts, in total, per executor and per MIME type
+     */
+    public Map<String, Object> getCounters() {
+        Map<String, Object> counters = new LinkedHashMap<>();
+        Counters total = new Counters();
+        byExecutor.values().forEach(executorCounters -> {
+            total.completed.add(executorCounters.completed.sum());
+            total.failed.add(executorCounters.failed.sum());
+            total.running.add(executorCounters.running.sum());
+        });
+        Map<String, Long> totals = total.toMap();
+        totals.put("pending", active.values().stream()
+                .filter(entry -> entry.status.getStatus() == TaskRunStatus.PENDING)
+                .count());
+        counters.put("total", totals);
+        counters.put("byExecutor", toMap(byExecutor));
+        counters.put("byMimeType", toMap(byMimeType));
+        return counters;
+    }
+
+    private void finish(String taskId, Entry entry) {
+        active.remove(taskId);
+        Counters executorCounters = counters(byExecutor, entry.executor);
+        Counters mimeTypeCounters = counters(byMimeType, entry.mimeType);
+        if (entry.status.getStatus() == TaskRunStatus.COMPLETED) {
+            executorCounters.completed.increment();
+            mimeTypeCounters.completed.increment();
+        } else {
+            executorCounters.failed.increment();
+            mimeTypeCounters.failed.increment();
+            synchronized (failed) {
+                failed.put(taskId, entry);
+                pruneFailed();
+            }
+        }
+        synchronized (recent) {
+            recent.put(taskId, entry);
+            trim(recent, maxRecent);
+        }
+    }
+
+    // Called with the monitor of failed held; entries are in finishing order, expired ones are at the head
+    private void pruneFailed() {
+        long expiredBefore = System.currentTimeMillis() - failedRetentionMillis;
+        Iterator<Entry> entries = failed.values().iterator();
+        while (entries.hasNext()) {
+            if (entries.next().updatedAt >= expiredBefore) {
+                break;
+            }
+            entries.remove();
+        }
+        trim(failed, maxFailed);
+    }
+
+    private static void trim(LinkedHashMap<String, Entry> entries, int maxEntries) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static List<Entry> newestFirst(LinkedHashMap<String, Entry> entries) {
+        List<Entry> list = new ArrayList<>(entries.values());
+        Collections.reverse(list);
+        return list;
+    }
+
+    private static boolean matches(Entry entry, TaskRunStatus status, String pathFilter) {
+        if (status != null && entry.status.getStatus() != status) {
+            return false;
+        }
+        if (pathFilter == null || pathFilter.isBlank()) {
+            return true;
+        }
+        FileTask task = entry.status.getTask();
+        return task != null && task.getFilePath() != null && task.getFilePath().contains(pathFilter);
+    }
+
+    private static Counters counters(Map<String, Counters> counters, String key) {
+        return counters.computeIfAbsent(key, k -> new Counters());
+    }
+
+    private static Map<String, Map<String, Long>> toMap(Map<String, Counters> counters) {
+        Map<String, Map<String, Long>> map = new TreeMap<>();
+        counters.forEach((key, value) -> map.put(key, value.toMap()));
+        return map;
+    }
+
+    private static String executor(FileTask task) {
+        if (task == null || task.getThreadName() == null) {
+            return UNKNOWN;
+        }
+        return THREAD_NUMBER.matcher(task.getThreadName()).replaceFirst("");
+    }
+
+    private static String mimeType(FileTask task) {
+        if (task == null || task.getFilePath() == null) {
+            return UNKNOWN;
+        }
+        return MediaTypeFactory.getMediaType(task.getFilePath())
+                .map(MediaType::toString)
+                .orElse(UNKNOWN);
+    }
+
+    private static class Entry {
+        private final TaskStatus status;
+        private final String mimeType;
+        private final String executor;
+        private final long updatedAt;
+
+        Entry(TaskStatus status, String mimeType, String executor, long updatedAt) {
+            this.status = status;
+            this.mimeType = mimeType;
+            this.executor = executor;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private static class Counters {
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder running = new LongAdder();
+
+        Map<String, Long> toMap() {
+            Map<String, Long> map = new LinkedHashMap<>();
+            map.put("completed", completed.sum());
+            map.put("failed", failed.sum());
+            map.put("running", running.sum());
+            return map;
+        }
+    }
+}
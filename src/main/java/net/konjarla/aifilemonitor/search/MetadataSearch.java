@@ -10,10 +10,12 @@ import java.util.Optional;
 
 public interface MetadataSearch {
     DocumentMetadata indexDocument(DocumentMetadata metadata);
+    void bulkIndex(List<DocumentMetadata> metadata);
     Optional<DocumentMetadata> getDocument(String fileId);
     List<DocumentMetadata> searchByFilename(String filename);
     List<DocumentMetadata> searchByExtension(String extension);
     List<DocumentMetadata> searchByClassification(String classification);
     Page<DocumentMetadata> searchDocuments(DocumentSearchCriteria criteria, Pageable pageable);
     void deleteDocument(String fileId);
+    void bulkDelete(List<String> fileIds);
 }
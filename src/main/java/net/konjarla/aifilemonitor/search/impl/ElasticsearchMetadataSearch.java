@@ -2,29 +2,68 @@ package net.konjarla.aifilemonitor.search.impl;
 
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import net.konjarla.aifilemonitor.search.MetadataSearch;
 import net.konjarla.aifilemonitor.search.model.DocumentMetadata;
 import net.konjarla.aifilemonitor.search.model.DocumentSearchCriteria;
 import net.konjarla.aifilemonitor.search.service.DocumentMetadataService;
+import net.konjarla.aifilemonitor.transport.DownstreamLimiter;
+import net.konjarla.aifilemonitor.transport.DownstreamLimiter.Downstream;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.RefreshPolicy;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class ElasticsearchMetadataSearch implements MetadataSearch {
+    // Rough per-document envelope of the bulk action line and the JSON field names
+    private static final int DOCUMENT_OVERHEAD_BYTES = 256;
 
     @NonNull
     private final DocumentMetadataService documentMetadataService;
+    @NonNull
+    private final DownstreamLimiter downstreamLimiter;
+
+    @Value("${elasticsearch.bulk.max-actions}")
+    private Integer bulkMaxActions;
+
+    @Value("${elasticsearch.bulk.max-bytes}")
+    private Long bulkMaxBytes;
+
+    @Value("${elasticsearch.bulk.refresh-policy}")
+    private RefreshPolicy bulkRefreshPolicy;
 
     @Override
     public DocumentMetadata indexDocument(DocumentMetadata metadata) {
         return documentMetadataService.save(metadata);
     }
 
+    @Override
+    public void bulkIndex(List<DocumentMetadata> metadata) {
+        List<DocumentMetadata> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (DocumentMetadata doc : metadata) {
+            long docBytes = estimateSize(doc);
+            if (!batch.isEmpty() && (batch.size() >= bulkMaxActions || batchBytes + docBytes > bulkMaxBytes)) {
+                flushIndex(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(doc);
+            batchBytes += docBytes;
+        }
+        if (!batch.isEmpty()) {
+            flushIndex(batch);
+        }
+    }
+
     @Override
     public Optional<DocumentMetadata> getDocument(String fileId) {
         return documentMetadataService.findById(fileId);
@@ -54,4 +93,41 @@ public class ElasticsearchMetadataSearch implements MetadataSearch {
     public void deleteDocument(String fileId) {
         documentMetadataService.delete(fileId);
     }
+
+    /**
+     * Deletes the documents in batches of {@code elasticsearch.bulk.max-actions}. Fails on the first
+     * batch that could not be deleted completely, so callers keep their own rows of the documents.
+     */
+    @Override
+    public void bulkDelete(List<String> fileIds) {
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        // Delete by query only sees searchable documents, make the recently indexed ones visible
+        downstreamLimiter.run(Downstream.ELASTICSEARCH, documentMetadataService::refresh);
+        for (int from = 0; from < fileIds.size(); from += bulkMaxActions) {
+            List<String> batch = fileIds.subList(from, Math.min(from + bulkMaxActions, fileIds.size()));
+            downstreamLimiter.run(Downstream.ELASTICSEARCH, () -> documentMetadataService.deleteAll(batch, bulkRefreshPolicy));
+            log.debug("Bulk deleted {} documents", batch.size());
+        }
+    }
+
+    private void flushIndex(List<DocumentMetadata> batch) {
+        downstreamLimiter.run(Downstream.ELASTICSEARCH, () -> documentMetadataService.saveAll(batch, bulkRefreshPolicy));
+        log.debug("Bulk indexed {} documents", batch.size());
+    }
+
+    private long estimateSize(DocumentMetadata doc) {
+        long size = DOCUMENT_OVERHEAD_BYTES;
+        size += length(doc.getFileId()) + length(doc.getFilename()) + length(doc.getFilenameKeyword())
+                + length(doc.getExtension()) + length(doc.getMimeType());
+        if (doc.getClassification() != null) {
+            size += doc.getClassification().stream().mapToInt(this::length).sum();
+        }
+        return size;
+    }
+
+    private int length(String value) {
+        return value != null ? value.length() : 0;
+    }
 }
@@ -2,11 +2,20 @@ package net.konjarla.aifilemonitor.search.service;
 
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import net.konjarla.aifilemonitor.search.model.DocumentMetadata;
 import net.konjarla.aifilemonitor.search.model.DocumentSearchCriteria;
 import net.konjarla.aifilemonitor.search.repository.DocumentMetadataRepository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.RefreshPolicy;
+import org.springframework.data.elasticsearch.core.query.BulkOptions;
+import org.springframework.data.elasticsearch.core.query.ByQueryResponse;
+import org.springframework.data.elasticsearch.core.query.DeleteQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -14,14 +23,63 @@ import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class DocumentMetadataService {
 
     private final DocumentMetadataRepository repository;
+    private final ElasticsearchOperations elasticsearchOperations;
 
     public DocumentMetadata save(DocumentMetadata metadata) {
         return repository.save(metadata);
     }
 
+    /**
+     * Indexes the documents with a single {@code _bulk} request.
+     * @param metadata Documents to index
+     * @param refreshPolicy Refresh policy applied to the bulk request
+     */
+    public void saveAll(List<DocumentMetadata> metadata, RefreshPolicy refreshPolicy) {
+        List<IndexQuery> queries = metadata.stream()
+                .map(doc -> new IndexQueryBuilder()
+                        .withId(doc.getFileId())
+                        .withObject(doc)
+                        .build())
+                .toList();
+        BulkOptions bulkOptions = BulkOptions.builder()
+                .withRefreshPolicy(refreshPolicy)
+                .build();
+        elasticsearchOperations.bulkIndex(queries, bulkOptions, DocumentMetadata.class);
+    }
+
+    /**
+     * Deletes the documents with a single delete by ids query.
+     * @param fileIds Ids of the documents to delete
+     * @param refreshPolicy Whether the index is refreshed after the delete, {@code WAIT_UNTIL} refreshes as well
+     * @throws IllegalStateException If some of the documents could not be deleted
+     */
+    public void deleteAll(List<String> fileIds, RefreshPolicy refreshPolicy) {
+        NativeQuery idsQuery = NativeQuery.builder()
+                .withQuery(query -> query.ids(ids -> ids.values(fileIds)))
+                .build();
+        DeleteQuery deleteQuery = DeleteQuery.builder(idsQuery)
+                .withRefresh(refreshPolicy != RefreshPolicy.NONE)
+                .build();
+        ByQueryResponse response = elasticsearchOperations.delete(deleteQuery, DocumentMetadata.class);
+        if (!response.getFailures().isEmpty() || response.getTimedOut()) {
+            response.getFailures().forEach(failure -> log.error("Error deleting document {}: {}", failure.getId(),
+                    failure.getCause() != null ? failure.getCause().getMessage() : failure.getStatus()));
+            throw new IllegalStateException("Could not delete " + response.getFailures().size() + " of "
+                    + fileIds.size() + " documents" + (response.getTimedOut() ? ", timed out" : ""));
+        }
+    }
+
+    /**
+     * Makes every indexed document searchable.
+     */
+    public void refresh() {
+        elasticsearchOperations.indexOps(DocumentMetadata.class).refresh();
+    }
+
     public Optional<DocumentMetadata> findById(String fileId) {
         return repository.findById(fileId);
     }
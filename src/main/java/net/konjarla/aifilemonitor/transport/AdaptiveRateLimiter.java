@@ -0,0 +1,308 @@
+package net.konjarla.aifilemonitor.transport;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.konjarla.aifilemonitor.transport.DownstreamLimiter.Downstream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Limits the requests to each LLM endpoint to what the endpoint can take:
+ * <ul>
+ *     <li>the number of concurrent requests adapts (AIMD): it grows by one per window of
+ *     successful requests up to {@code downstream.concurrency.*} and is multiplied by
+ *     {@code llm.limiter.decrease-ratio} when a request is rate limited, rejected as
+ *     unavailable or times out;</li>
+ *     <li>requests are paced by a token bucket, at the configured rate and at the rate the
+ *     {@code x-ratelimit-*} headers of the provider leave until their reset;</li>
+ *     <li>{@code retry-after}, or nothing remaining until the reset, holds all requests to the
+ *     endpoint until then, so retries do not burn the quota again.</li>
+ * </ul>
+ * Replaces the fixed {@link DownstreamLimiter} permits for the Ollama and OpenAI clients.
+ */
+@Component
+@Slf4j
+public class AdaptiveRateLimiter {
+    // Groq and OpenAI durations, e.g. 2m59.56s, 7.66s or 20ms
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+    // Rough size of a token in request bytes, enough to compare requests with the remaining tokens
+    private static final int BYTES_PER_TOKEN = 4;
+    private static final int FAILED = -1;
+
+    private final Map<Downstream, Endpoint> endpoints = new EnumMap<>(Downstream.class);
+
+    public AdaptiveRateLimiter(MeterRegistry meterRegistry,
+                               @Value("${downstream.concurrency.ollama}") int ollamaConcurrency,
+                               @Value("${downstream.concurrency.openai}") int openAiConcurrency,
+                               @Value("${llm.limiter.requests-per-second.ollama}") double ollamaRate,
+                               @Value("${llm.limiter.requests-per-second.openai}") double openAiRate,
+                               @Value("${llm.limiter.min-concurrency}") int minConcurrency,
+                               @Value("${llm.limiter.decrease-ratio}") double decreaseRatio,
+                               @Value("${llm.limiter.burst}") int burst) {
+        endpoints.put(Downstream.OLLAMA, new Endpoint(meterRegistry, "ollama", minConcurrency, ollamaConcurrency,
+                decreaseRatio, ollamaRate, burst));
+        endpoints.put(Downstream.OPENAI, new Endpoint(meterRegistry, "openai", minConcurrency, openAiConcurrency,
+                decreaseRatio, openAiRate, burst));
+    }
+
+    /**
+     * Interceptor pacing the requests of the endpoint and adapting to its responses. Register it
+     * before interceptors that read the response body, so a request counts until it is read.
+     */
+    public ClientHttpRequestInterceptor interceptor(Downstream downstream) {
+        Endpoint endpoint = endpoints.get(downstream);
+        if (endpoint == null) {
+            throw new IllegalArgumentException("No rate limiter for " + downstream);
+        }
+        return (request, body, execution) -> {
+            long requestTokens = Math.max(1, body.length / BYTES_PER_TOKEN);
+            long start = endpoint.acquire();
+            int status = FAILED;
+            HttpHeaders headers = null;
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                status = response.getStatusCode().value();
+                headers = response.getHeaders();
+                return response;
+            } finally {
+                endpoint.release(start, requestTokens, status, headers);
+            }
+        };
+    }
+
+    // Seconds of retry-after, or the time until its HTTP date
+    static long parseRetryAfterMillis(String value) {
+        try {
+            return (long) (Double.parseDouble(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (Exception ignored) {
+                return -1;
+            }
+        }
+    }
+
+    static long parseDurationMillis(String value) {
+        Matcher matcher = DURATION_PART.matcher(value);
+        double millis = 0;
+        boolean found = false;
+        while (matcher.find()) {
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += switch (matcher.group(2)) {
+                case "h" -> amount * 3_600_000;
+                case "m" -> amount * 60_000;
+                case "s" -> amount * 1000;
+                default -> amount;
+            };
+            found = true;
+        }
+        return found ? (long) millis : -1;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value != null ? Long.parseLong(value.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class Endpoint {
+        private final String name;
+        private final int minConcurrency;
+        private final int maxConcurrency;
+        private final double decreaseRatio;
+        private final double configuredRate;
+        private final int burst;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition available = lock.newCondition();
+        private final Timer waitTimer;
+        private final Counter rateLimited;
+        private final Counter unavailable;
+        private final Counter failed;
+
+        // Guarded by lock, volatile where read by the gauges
+        private volatile double limit;
+        private volatile int inFlight;
+        private volatile double headerRate;
+        private volatile long remainingRequests = -1;
+        private volatile long remainingTokens = -1;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        private long blockedUntil = System.nanoTime();
+        private long lastDecrease = System.nanoTime();
+        private double averageRequestTokens;
+
+        Endpoint(MeterRegistry meterRegistry, String name, int minConcurrency, int maxConcurrency,
+                 double decreaseRatio, double configuredRate, int burst) {
+            this.name = name;
+            this.minConcurrency = Math.max(1, Math.min(minConcurrency, maxConcurrency));
+            this.maxConcurrency = maxConcurrency;
+            this.decreaseRatio = decreaseRatio;
+            this.configuredRate = configuredRate;
+            this.burst = Math.max(1, burst);
+            this.limit = maxConcurrency;
+            this.tokens = this.burst;
+            Tags tags = Tags.of("endpoint", name);
+            Gauge.builder("llm.limiter.concurrency.limit", this, endpoint -> endpoint.limit)
+                    .tags(tags).register(meterRegistry);
+            Gauge.builder("llm.limiter.in-flight", this, endpoint -> endpoint.inFlight)
+                    .tags(tags).register(meterRegistry);
+            Gauge.builder("llm.limiter.rate", this, Endpoint::paceRate)
+                    .tags(tags).baseUnit("requests/s").register(meterRegistry);
+            Gauge.builder("llm.limiter.remaining", this, endpoint -> endpoint.remainingRequests)
+                    .tags(tags.and("kind", "requests")).register(meterRegistry);
+            Gauge.builder("llm.limiter.remaining", this, endpoint -> endpoint.remainingTokens)
+                    .tags(tags.and("kind", "tokens")).register(meterRegistry);
+            this.waitTimer = Timer.builder("llm.limiter.wait").tags(tags).register(meterRegistry);
+            this.rateLimited = meterRegistry.counter("llm.limiter.throttled", tags.and("reason", "rate-limited"));
+            this.unavailable = meterRegistry.counter("llm.limiter.throttled", tags.and("reason", "unavailable"));
+            this.failed = meterRegistry.counter("llm.limiter.throttled", tags.and("reason", "failed"));
+        }
+
+        /**
+         * Waits until the endpoint is not blocked, a concurrency slot is free and the bucket has a token.
+         * @return The start of the request, in nanos
+         */
+        long acquire() throws InterruptedIOException {
+            long waitStart = System.nanoTime();
+            lock.lock();
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    double rate = paceRate();
+                    refill(now, rate);
+                    if (now - blockedUntil < 0) {
+                        available.awaitNanos(blockedUntil - now);
+                    } else if (inFlight >= (int) limit) {
+                        available.await();
+                    } else if (rate > 0 && tokens < 1) {
+                        available.awaitNanos((long) ((1 - tokens) / rate * 1e9));
+                    } else {
+                        inFlight++;
+                        if (rate > 0) {
+                            tokens -= 1;
+                        }
+                        waitTimer.record(now - waitStart, TimeUnit.NANOSECONDS);
+                        return now;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the " + name + " rate limiter");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Frees the slot of a request and adapts the limits to its outcome.
+         * @param status HTTP status of the response, {@link #FAILED} if there was none (e.g. a timeout)
+         */
+        void release(long start, long requestTokens, int status, HttpHeaders headers) {
+            lock.lock();
+            try {
+                inFlight--;
+                long now = System.nanoTime();
+                averageRequestTokens = averageRequestTokens == 0
+                        ? requestTokens : 0.8 * averageRequestTokens + 0.2 * requestTokens;
+                if (headers != null) {
+                    readHeaders(headers, now);
+                }
+                if (status == 429 || status == 503 || status == FAILED) {
+                    (status == 429 ? rateLimited : status == 503 ? unavailable : failed).increment();
+                    // Only one decrease per round of requests, those in flight saw the same overload
+                    if (start - lastDecrease > 0) {
+                        limit = Math.max(minConcurrency, limit * decreaseRatio);
+                        lastDecrease = now;
+                        log.info("Throttled by {} ({}), concurrency limit now {}", name,
+                                status == FAILED ? "no response" : status, String.format("%.1f", limit));
+                    }
+                } else if (status >= 200 && status < 300) {
+                    limit = Math.min(maxConcurrency, limit + 1.0 / limit);
+                }
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void readHeaders(HttpHeaders headers, long now) {
+            String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+            if (retryAfter != null) {
+                block(parseRetryAfterMillis(retryAfter), now);
+            }
+            double rate = 0;
+            remainingRequests = parseLong(headers.getFirst("x-ratelimit-remaining-requests"));
+            long resetRequests = resetMillis(headers, "x-ratelimit-reset-requests");
+            if (remainingRequests >= 0 && resetRequests > 0) {
+                if (remainingRequests == 0) {
+                    block(resetRequests, now);
+                }
+                rate = Math.max(1, remainingRequests) * 1000.0 / resetRequests;
+            }
+            remainingTokens = parseLong(headers.getFirst("x-ratelimit-remaining-tokens"));
+            long resetTokens = resetMillis(headers, "x-ratelimit-reset-tokens");
+            if (remainingTokens >= 0 && resetTokens > 0) {
+                if (remainingTokens < averageRequestTokens) {
+                    block(resetTokens, now);
+                }
+                double tokenRate = Math.max(remainingTokens, averageRequestTokens) / averageRequestTokens
+                        * 1000.0 / resetTokens;
+                rate = rate > 0 ? Math.min(rate, tokenRate) : tokenRate;
+            }
+            headerRate = rate;
+        }
+
+        private void block(long millis, long now) {
+            if (millis > 0) {
+                long until = now + TimeUnit.MILLISECONDS.toNanos(millis);
+                if (until - blockedUntil > 0) {
+                    blockedUntil = until;
+                    log.info("Holding requests to {} for {} ms", name, millis);
+                }
+            }
+        }
+
+        private static long resetMillis(HttpHeaders headers, String name) {
+            String value = headers.getFirst(name);
+            return value != null ? parseDurationMillis(value) : -1;
+        }
+
+        // Requests per second to pace at, 0 if unpaced
+        private double paceRate() {
+            double rate = headerRate;
+            if (configuredRate > 0) {
+                rate = rate > 0 ? Math.min(rate, configuredRate) : configuredRate;
+            }
+            return rate;
+        }
+
+        private void refill(long now, double rate) {
+            if (rate > 0) {
+                tokens = Math.min(burst, tokens + (now - lastRefill) / 1e9 * rate);
+            }
+            lastRefill = now;
+        }
+    }
+}
@@ -4,16 +4,18 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.client.ClientHttpResponse;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+/**
+ * Response with its body replaced, e.g. by a filtered stream over the original body.
+ */
 public class BufferedClientHttpResponseWrapper implements ClientHttpResponse {
 
     private final ClientHttpResponse originalResponse;
-    private final byte[] responseBody;
+    private final InputStream responseBody;
 
-    public BufferedClientHttpResponseWrapper(ClientHttpResponse originalResponse, byte[] responseBody) {
+    public BufferedClientHttpResponseWrapper(ClientHttpResponse originalResponse, InputStream responseBody) {
         this.originalResponse = originalResponse;
         this.responseBody = responseBody;
     }
@@ -40,7 +42,7 @@ public class BufferedClientHttpResponseWrapper implements ClientHttpResponse {
 
     @Override
     public InputStream getBody() throws IOException {
-        return new ByteArrayInputStream(responseBody);
+        return responseBody;
     }
 
     @Override
@@ -0,0 +1,68 @@
+package net.konjarla.aifilemonitor.transport;
+
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+
+/**
+ * Tells the failures of a downstream call apart. The Spring AI clients report 4xx responses as
+ * {@link NonTransientAiException} and 5xx responses as {@link TransientAiException}, with a message
+ * starting with the status code, and failures without a response as {@link ResourceAccessException}.
+ */
+public final class DownstreamErrors {
+    private DownstreamErrors() {
+    }
+
+    /**
+     * Whether the endpoint could not serve the call at all: no response, rate limited (429) or a
+     * server error. Retrying the same input in smaller pieces would only add load, the caller
+     * should fail and let the job be retried later.
+     */
+    public static boolean isUnavailable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientAiException || cause instanceof ResourceAccessException) {
+                return true;
+            }
+            int status = status(cause);
+            if (status == 429 || status >= 500) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the endpoint rejected the input itself with a 4xx response other than 429, e.g. a
+     * text exceeding the context length. A smaller input may succeed.
+     */
+    public static boolean isRejectedInput(Throwable e) {
+        if (isUnavailable(e)) {
+            return false;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            int status = status(cause);
+            if (status >= 400 && status < 500) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // HTTP status of the failure, -1 if it carries none
+    private static int status(Throwable e) {
+        if (e instanceof RestClientResponseException responseException) {
+            return responseException.getStatusCode().value();
+        }
+        if (e instanceof NonTransientAiException && e.getMessage() != null) {
+            String message = e.getMessage();
+            int end = message.indexOf(' ');
+            try {
+                return Integer.parseInt(end > 0 ? message.substring(0, end) : message);
+            } catch (NumberFormatException ignored) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,83 @@
+package net.konjarla.aifilemonitor.transport;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of concurrent calls to each downstream service. With virtual threads the
+ * executors no longer limit how many tasks run at once, so the limit is enforced where the
+ * calls leave the application instead. Waiting for a permit parks a virtual thread without
+ * pinning its carrier.
+ */
+@Component
+@Slf4j
+public class DownstreamLimiter {
+    public enum Downstream {
+        OLLAMA,
+        OPENAI,
+        POSTGRES,
+        ELASTICSEARCH
+    }
+
+    private final Map<Downstream, Semaphore> permits = new EnumMap<>(Downstream.class);
+
+    public DownstreamLimiter(MeterRegistry meterRegistry,
+                             @Value("${downstream.concurrency.ollama}") int ollama,
+                             @Value("${downstream.concurrency.openai}") int openAi,
+                             @Value("${downstream.concurrency.postgres}") int postgres,
+                             @Value("${downstream.concurrency.elasticsearch}") int elasticsearch) {
+        permits.put(Downstream.OLLAMA, new Semaphore(ollama, true));
+        permits.put(Downstream.OPENAI, new Semaphore(openAi, true));
+        permits.put(Downstream.POSTGRES, new Semaphore(postgres, true));
+        permits.put(Downstream.ELASTICSEARCH, new Semaphore(elasticsearch, true));
+        permits.forEach((downstream, semaphore) -> {
+            Tags tags = Tags.of("downstream", downstream.name().toLowerCase());
+            meterRegistry.gauge("downstream.concurrency.available", tags, semaphore, Semaphore::availablePermits);
+            meterRegistry.gauge("downstream.concurrency.waiting", tags, semaphore, Semaphore::getQueueLength);
+        });
+        log.info("Downstream concurrency limits :: {}", Map.of(Downstream.OLLAMA, ollama, Downstream.OPENAI, openAi,
+                Downstream.POSTGRES, postgres, Downstream.ELASTICSEARCH, elasticsearch));
+    }
+
+    public <T> T call(Downstream downstream, Supplier<T> call) {
+        Semaphore semaphore = permits.get(downstream);
+        semaphore.acquireUninterruptibly();
+        try {
+            return call.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    public void run(Downstream downstream, Runnable call) {
+        call(downstream, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Interceptor holding a permit of the downstream for the duration of each HTTP exchange.
+     * Register it before interceptors that read the response body.
+     */
+    public ClientHttpRequestInterceptor interceptor(Downstream downstream) {
+        Semaphore semaphore = permits.get(downstream);
+        return (request, body, execution) -> {
+            semaphore.acquireUninterruptibly();
+            try {
+                return execution.execute(request, body);
+            } finally {
+                semaphore.release();
+            }
+        };
+    }
+}
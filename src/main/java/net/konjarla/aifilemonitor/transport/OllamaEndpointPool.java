@@ -0,0 +1,241 @@
+package net.konjarla.aifilemonitor.transport;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
+import org.springframework.boot.http.client.ClientHttpRequestFactorySettings;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.support.HttpRequestWrapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads the Ollama requests of each workload over a list of Ollama hosts. A request goes to
+ * the available host of its route with the fewest outstanding requests, the faster one on ties.
+ * A host is taken out of rotation when a request to it fails without a response or its health
+ * check fails, until a health check passes again, and for {@code ollama.pool.ejection-time} when
+ * its latency on a route exceeds {@code ollama.pool.slow-factor} times the median of the route.
+ * If no host is available the requests still go to the least loaded one.
+ * Hosts are shared between routes, so their outstanding requests count across workloads.
+ */
+@Component
+@Slf4j
+public class OllamaEndpointPool {
+    // Weight of the latest request in the latency average of a host
+    private static final double LATENCY_ALPHA = 0.2;
+
+    private final MeterRegistry meterRegistry;
+    private final RestClient healthClient;
+    private final double slowFactor;
+    private final long ejectionNanos;
+    private final Map<URI, Node> nodes = new ConcurrentHashMap<>();
+    private final List<Route> routes = new CopyOnWriteArrayList<>();
+
+    public OllamaEndpointPool(MeterRegistry meterRegistry,
+                              @Value("${ollama.pool.health-check.timeout}") Duration healthCheckTimeout,
+                              @Value("${ollama.pool.slow-factor}") double slowFactor,
+                              @Value("${ollama.pool.ejection-time}") Duration ejectionTime) {
+        this.meterRegistry = meterRegistry;
+        this.slowFactor = slowFactor;
+        this.ejectionNanos = ejectionTime.toNanos();
+        ClientHttpRequestFactorySettings settings = ClientHttpRequestFactorySettings.defaults()
+                .withConnectTimeout(healthCheckTimeout)
+                .withReadTimeout(healthCheckTimeout);
+        this.healthClient = RestClient.builder()
+                .requestFactory(ClientHttpRequestFactoryBuilder.detect().build(settings))
+                .build();
+    }
+
+    /**
+     * @param name Name of the workload, used in logs and metrics
+     * @param hosts Base URLs of the Ollama hosts serving the workload
+     * @return Interceptor sending each request of the workload to one of the hosts
+     */
+    public ClientHttpRequestInterceptor route(String name, List<String> hosts) {
+        if (hosts.isEmpty()) {
+            throw new IllegalArgumentException("No Ollama hosts for " + name);
+        }
+        List<RouteNode> routeNodes = new ArrayList<>();
+        for (String host : hosts) {
+            URI uri = URI.create(host.trim());
+            Node node = nodes.computeIfAbsent(uri, this::newNode);
+            RouteNode routeNode = new RouteNode(node);
+            Gauge.builder("ollama.pool.latency", routeNode, RouteNode::latencyMillis)
+                    .tags(Tags.of("host", uri.toString(), "route", name)).baseUnit("ms").register(meterRegistry);
+            routeNodes.add(routeNode);
+        }
+        Route route = new Route(name, routeNodes);
+        routes.add(route);
+        log.info("Ollama route {} :: {}", name, hosts);
+        return route;
+    }
+
+    /**
+     * Checks each host, and ejects the hosts that are much slower than the others on a route.
+     */
+    @Scheduled(fixedDelayString = "${ollama.pool.health-check.interval}")
+    public void checkHealth() {
+        for (Node node : nodes.values()) {
+            try {
+                healthClient.get()
+                        .uri(UriComponentsBuilder.fromUri(node.uri).path("/api/version").build().toUri())
+                        .retrieve()
+                        .toBodilessEntity();
+                if (!node.healthy) {
+                    log.info("Ollama host {} is back", node.uri);
+                }
+                node.healthy = true;
+            } catch (Exception e) {
+                node.markDown("health check failed: " + e.getMessage());
+            }
+        }
+        long now = System.nanoTime();
+        for (Route route : routes) {
+            route.ejectSlowNodes(now);
+        }
+    }
+
+    private Node newNode(URI uri) {
+        Node node = new Node(uri);
+        Tags tags = Tags.of("host", uri.toString());
+        Gauge.builder("ollama.pool.outstanding", node, n -> n.outstanding.get()).tags(tags).register(meterRegistry);
+        Gauge.builder("ollama.pool.available", node, n -> n.isAvailable(System.nanoTime()) ? 1 : 0)
+                .tags(tags).register(meterRegistry);
+        return node;
+    }
+
+    private static URI rebase(URI uri, URI base) {
+        return UriComponentsBuilder.fromUri(uri)
+                .scheme(base.getScheme())
+                .host(base.getHost())
+                .port(base.getPort())
+                .build(true)
+                .toUri();
+    }
+
+    private static class Node {
+        private final URI uri;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean healthy = true;
+        private volatile long ejectedUntil = System.nanoTime();
+
+        Node(URI uri) {
+            this.uri = uri;
+        }
+
+        boolean isAvailable(long now) {
+            return healthy && now - ejectedUntil >= 0;
+        }
+
+        void markDown(String reason) {
+            if (healthy) {
+                log.warn("Taking Ollama host {} out of rotation, {}", uri, reason);
+            }
+            healthy = false;
+        }
+    }
+
+    private static class RouteNode {
+        private final Node node;
+        // Average request latency in nanos, 0 until the first request
+        private volatile double latency;
+
+        RouteNode(Node node) {
+            this.node = node;
+        }
+
+        void recordLatency(long nanos) {
+            double current = latency;
+            latency = current == 0 ? nanos : current + LATENCY_ALPHA * (nanos - current);
+        }
+
+        double latencyMillis() {
+            return latency / 1_000_000;
+        }
+    }
+
+    private class Route implements ClientHttpRequestInterceptor {
+        private final String name;
+        private final List<RouteNode> routeNodes;
+
+        Route(String name, List<RouteNode> routeNodes) {
+            this.name = name;
+            this.routeNodes = routeNodes;
+        }
+
+        @Override
+        public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+                throws IOException {
+            RouteNode routeNode = select();
+            Node node = routeNode.node;
+            node.outstanding.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                ClientHttpResponse response = execution.execute(new HttpRequestWrapper(request) {
+                    @Override
+                    public URI getURI() {
+                        return rebase(request.getURI(), node.uri);
+                    }
+                }, body);
+                routeNode.recordLatency(System.nanoTime() - start);
+                return response;
+            } catch (IOException e) {
+                node.markDown("request failed: " + e.getMessage());
+                throw e;
+            } finally {
+                node.outstanding.decrementAndGet();
+            }
+        }
+
+        private RouteNode select() {
+            long now = System.nanoTime();
+            Comparator<RouteNode> leastLoaded = Comparator
+                    .<RouteNode>comparingInt(routeNode -> routeNode.node.outstanding.get())
+                    .thenComparingDouble(routeNode -> routeNode.latency);
+            return routeNodes.stream()
+                    .filter(routeNode -> routeNode.node.isAvailable(now))
+                    .min(leastLoaded)
+                    .orElseGet(() -> routeNodes.stream().min(leastLoaded).orElseThrow());
+        }
+
+        void ejectSlowNodes(long now) {
+            List<RouteNode> measured = routeNodes.stream()
+                    .filter(routeNode -> routeNode.node.isAvailable(now) && routeNode.latency > 0)
+                    .sorted(Comparator.comparingDouble(routeNode -> routeNode.latency))
+                    .toList();
+            if (measured.size() < 2) {
+                return;
+            }
+            double median = measured.get(measured.size() / 2).latency;
+            for (RouteNode routeNode : measured) {
+                if (routeNode.latency > slowFactor * median) {
+                    log.warn("Ejecting Ollama host {} from route {} for {} s, latency {} ms against a median of {} ms",
+                            routeNode.node.uri, name, ejectionNanos / 1_000_000_000, (long) routeNode.latencyMillis(),
+                            (long) (median / 1_000_000));
+                    routeNode.node.ejectedUntil = now + ejectionNanos;
+                    // Starts over from the median when it is back in rotation
+                    routeNode.latency = median;
+                }
+            }
+        }
+    }
+}
@@ -1,37 +1,48 @@
 package net.konjarla.aifilemonitor.transport;
 
 import lombok.extern.slf4j.Slf4j;
-import net.konjarla.aifilemonitor.util.ThinkTagUtil;
 import org.springframework.http.HttpRequest;
 import org.springframework.http.client.ClientHttpRequestExecution;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.util.StreamUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 
+/**
+ * Removes the think blocks of reasoning models from chat responses, see {@link ThinkTagFilterInputStream}.
+ * Other responses, embeddings in particular, are passed through untouched. Request and response
+ * bodies are only copied for logging when debug logging is enabled.
+ */
 @Slf4j
 public class RestClientInterceptor implements ClientHttpRequestInterceptor {
 
     @Override
     public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
-        log.debug(request.getURI().toString());
-        log.debug(Arrays.toString(new String[]{new String(body, StandardCharsets.UTF_8)}));
+        boolean debug = log.isDebugEnabled();
+        if (debug) {
+            log.debug("{} {}", request.getURI(), new String(body, StandardCharsets.UTF_8));
+        }
         ClientHttpResponse response = execution.execute(request, body);
-        // Copy the response body to a byte array for logging
+        if (!isChat(request)) {
+            return response;
+        }
+        if (!debug) {
+            return new BufferedClientHttpResponseWrapper(response, new ThinkTagFilterInputStream(response.getBody()));
+        }
         byte[] responseBody = StreamUtils.copyToByteArray(response.getBody());
+        log.debug("Response Before Think: {}", new String(responseBody, StandardCharsets.UTF_8));
+        responseBody = new ThinkTagFilterInputStream(new ByteArrayInputStream(responseBody)).readAllBytes();
+        log.debug("Response After Think: {}", new String(responseBody, StandardCharsets.UTF_8));
+        return new BufferedClientHttpResponseWrapper(response, new ByteArrayInputStream(responseBody));
+    }
 
-        log.debug("Response Before Think: " + new String(responseBody));
-        String responseBodyString = new String(responseBody);
-        responseBodyString = ThinkTagUtil.removeThinkTags(responseBodyString);
-        responseBody = responseBodyString.getBytes(StandardCharsets.UTF_8);
-        // Print the response
-        log.debug("Response After Think: " + new String(responseBody));
-
-        // Create a new response with the copied body
-        return new BufferedClientHttpResponseWrapper(response, responseBody);
-        // return execution.execute(request, body);
+    // Ollama chat and generate, OpenAI compatible chat completions
+    private static boolean isChat(HttpRequest request) {
+        String path = request.getURI().getPath();
+        return path != null && (path.endsWith("/api/chat") || path.endsWith("/api/generate")
+                || path.endsWith("/chat/completions"));
     }
 }
@@ -0,0 +1,47 @@
+package net.konjarla.aifilemonitor.transport;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter between retries of downstream calls: the n-th retry waits
+ * a random time up to {@code base * 2^n}, capped at {@code max}. The jitter spreads the retries of
+ * requests that failed together, instead of sending them back at the same moment.
+ */
+@Component
+public class RetryBackoff {
+    private final long baseMillis;
+    private final long maxMillis;
+
+    public RetryBackoff(@Value("${llm.retry.backoff-base}") Duration base,
+                        @Value("${llm.retry.backoff-max}") Duration max) {
+        this.baseMillis = base.toMillis();
+        this.maxMillis = max.toMillis();
+    }
+
+    /**
+     * @param attempt The number of attempts made so far, starting at 1
+     * @return The time to wait before the next attempt
+     */
+    public Duration delay(int attempt) {
+        long ceiling = Math.min(maxMillis, baseMillis << Math.min(attempt - 1, 30));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    /**
+     * Waits before the next attempt.
+     * @return {@code false} if the thread was interrupted, the caller should stop retrying
+     */
+    public boolean pause(int attempt) {
+        try {
+            Thread.sleep(delay(attempt));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package net.konjarla.aifilemonitor.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Removes {@code <think>...</think>} blocks from a response body while it is read, in a single
+ * pass over the bytes. The JSON unicode escapes of {@code <}, {@code >} and {@code /} (backslash
+ * u003c, u003e and u002f, in any case) are decoded on the way, so escaped tags are removed as
+ * well; this leaves the decoded JSON unchanged. A backslash escaped by the one before it does not
+ * start an escape, so an escaped backslash followed by u003c stays text. Only the think block being read is held in
+ * memory: a block that is not closed by the end of the body is passed through.
+ */
+public class ThinkTagFilterInputStream extends InputStream {
+    private static final byte[] OPEN = "<think>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CLOSE = "</think>".getBytes(StandardCharsets.US_ASCII);
+    // Length of a unicode escape, a backslash, u and four hex digits
+    private static final int ESCAPE_LENGTH = 6;
+    private static final int FILL_BYTES = 8192;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[FILL_BYTES];
+    private int position;
+    private int limit;
+    private boolean eof;
+    // Whether the previous byte was a backslash starting an escape
+    private boolean escaped;
+
+    private byte[] out = new byte[FILL_BYTES + OPEN.length];
+    private int outPosition;
+    private int outLimit;
+
+    private boolean inside;
+    // Bytes of the open or close tag matched so far
+    private int matched;
+    private byte[] think = new byte[256];
+    private int thinkLength;
+    private boolean finished;
+
+    public ThinkTagFilterInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (outPosition == outLimit && !fill()) {
+            return -1;
+        }
+        return out[outPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (outPosition == outLimit && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, outLimit - outPosition);
+        System.arraycopy(out, outPosition, b, off, n);
+        outPosition += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return outLimit - outPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean fill() throws IOException {
+        outPosition = 0;
+        outLimit = 0;
+        while (outLimit < FILL_BYTES) {
+            int b = nextDecoded();
+            if (b < 0) {
+                finish();
+                break;
+            }
+            accept((byte) b);
+        }
+        return outLimit > 0;
+    }
+
+    private void accept(byte b) {
+        if (inside) {
+            appendThink(b);
+            if (b == CLOSE[matched]) {
+                if (++matched == CLOSE.length) {
+                    inside = false;
+                    matched = 0;
+                    thinkLength = 0;
+                }
+            } else {
+                matched = b == CLOSE[0] ? 1 : 0;
+            }
+        } else if (b == OPEN[matched]) {
+            if (++matched == OPEN.length) {
+                inside = true;
+                matched = 0;
+                thinkLength = 0;
+                for (byte tagByte : OPEN) {
+                    appendThink(tagByte);
+                }
+            }
+        } else {
+            // The held bytes were not an open tag after all; the open tag has no repeated prefix
+            emit(OPEN, matched);
+            matched = 0;
+            if (b == OPEN[0]) {
+                matched = 1;
+            } else {
+                emit(b);
+            }
+        }
+    }
+
+    private void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (inside) {
+            emit(think, thinkLength);
+        } else {
+            emit(OPEN, matched);
+        }
+        matched = 0;
+    }
+
+    // The next byte of the body with the tag characters unescaped, -1 at the end
+    private int nextDecoded() throws IOException {
+        if (!ensure(1)) {
+            return -1;
+        }
+        int b = buffer[position] & 0xff;
+        if (escaped) {
+            escaped = false;
+        } else if (b == '\\') {
+            if (ensure(ESCAPE_LENGTH)) {
+                int decoded = decodeEscape();
+                if (decoded >= 0) {
+                    position += ESCAPE_LENGTH;
+                    return decoded;
+                }
+            }
+            escaped = true;
+        }
+        position++;
+        return b;
+    }
+
+    // The tag character escaped at the current position, -1 if it is another escape
+    private int decodeEscape() {
+        int at = position;
+        if ((buffer[at + 1] | 0x20) != 'u' || buffer[at + 2] != '0' || buffer[at + 3] != '0') {
+            return -1;
+        }
+        int high = buffer[at + 4];
+        int low = buffer[at + 5] | 0x20;
+        if (high == '3' && low == 'c') {
+            return '<';
+        }
+        if (high == '3' && low == 'e') {
+            return '>';
+        }
+        if (high == '2' && low == 'f') {
+            return '/';
+        }
+        return -1;
+    }
+
+    // Reads until at least n bytes are buffered, unless the body ends first
+    private boolean ensure(int n) throws IOException {
+        if (limit - position >= n) {
+            return true;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while (limit < n && !eof) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+        return limit >= n;
+    }
+
+    private void emit(byte b) {
+        if (outLimit == out.length) {
+            out = Arrays.copyOf(out, out.length * 2);
+        }
+        out[outLimit++] = b;
+    }
+
+    private void emit(byte[] bytes, int length) {
+        if (outLimit + length > out.length) {
+            out = Arrays.copyOf(out, Math.max(out.length * 2, outLimit + length));
+        }
+        System.arraycopy(bytes, 0, out, outLimit, length);
+        outLimit += length;
+    }
+
+    private void appendThink(byte b) {
+        if (thinkLength == think.length) {
+            think = Arrays.copyOf(think, think.length * 2);
+        }
+        think[thinkLength++] = b;
+    }
+}
@@ -0,0 +1,143 @@
+package net.konjarla.aifilemonitor.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe BK-tree of 64 bit hashes under the Hamming distance. A search within distance
+ * {@code d} of a hash only descends into the children whose edge distance lies within {@code d}
+ * of the distance to the node, so small radius searches visit a small part of the tree.
+ * Only the hashes are kept, whatever they identify is looked up by hash.
+ */
+public class BkTree {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root;
+    private int size;
+
+    /**
+     * A value found by {@link #search(long, int)}.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Match {
+        private final long hash;
+        private final int distance;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Adds the hash, hashes already in the tree are ignored.
+     */
+    public void add(long hash) {
+        lock.writeLock().lock();
+        try {
+            if (root == null) {
+                root = new Node(hash);
+                size++;
+                return;
+            }
+            Node node = root;
+            while (true) {
+                int distance = distance(hash, node.hash);
+                if (distance == 0) {
+                    return;
+                }
+                Node child = node.child(distance);
+                if (child == null) {
+                    node.addChild(distance, new Node(hash));
+                    size++;
+                    return;
+                }
+                node = child;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The hashes within {@code maxDistance} of the hash, closest first
+     */
+    public List<Match> search(long hash, int maxDistance) {
+        List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (root == null) {
+                return matches;
+            }
+            Deque<Node> pending = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Node node = pending.pop();
+                int distance = distance(hash, node.hash);
+                if (distance <= maxDistance) {
+                    matches.add(new Match(node.hash, distance));
+                }
+                for (int i = 0; i < node.childCount; i++) {
+                    if (Math.abs(node.childDistances[i] - distance) <= maxDistance) {
+                        pending.push(node.children[i]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort(Comparator.comparingInt(Match::getDistance));
+        return matches;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Children are kept in small arrays instead of maps, a million nodes mostly have none or a few
+    private static class Node {
+        private final long hash;
+        private byte[] childDistances;
+        private Node[] children;
+        private int childCount;
+
+        Node(long hash) {
+            this.hash = hash;
+        }
+
+        Node child(int distance) {
+            for (int i = 0; i < childCount; i++) {
+                if (childDistances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void addChild(int distance, Node child) {
+            if (children == null) {
+                childDistances = new byte[2];
+                children = new Node[2];
+            } else if (childCount == children.length) {
+                childDistances = Arrays.copyOf(childDistances, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            childDistances[childCount] = (byte) distance;
+            children[childCount] = child;
+            childCount++;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -30,6 +31,17 @@ public class FileUtils {
      * @param metadata map to store the metadata
      */
     public void populateFileMetadata(File file, Map<String, Object> metadata) {
+        populateFileMetadata(file, metadata, true);
+    }
+
+    /**
+     * Updates file metadata in the provided metadata map
+     *
+     * @param file             the file to get metadata from
+     * @param metadata         map to store the metadata
+     * @param includeChecksum  whether to read the file to calculate its checksum
+     */
+    public void populateFileMetadata(File file, Map<String, Object> metadata, boolean includeChecksum) {
         if (file == null || metadata == null) return;
 
         metadata.put("fileName", file.getName());
@@ -59,7 +71,9 @@ public class FileUtils {
                 fileName.substring(lastDotIndex + 1).toLowerCase() : "");
 
         // Calculate and add checksum
-        metadata.put("checksum", calculateFileChecksum(file));
+        if (includeChecksum) {
+            metadata.put("checksum", calculateFileChecksum(file));
+        }
 
         // Add POSIX attributes if available
         try {
@@ -104,21 +118,53 @@ public class FileUtils {
                 digest.update(byteArray, 0, bytesCount);
             }
 
-            byte[] bytes = digest.digest();
-            BigInteger number = new BigInteger(1, bytes);
-            StringBuilder hexString = new StringBuilder(number.toString(16));
-
-            while (hexString.length() < 64) {
-                hexString.insert(0, '0');
-            }
-
-            return hexString.toString();
+            return toHexChecksum(digest.digest());
         } catch (IOException e) {
             log.error("Error calculating checksum for file: " + file.getAbsolutePath(), e);
             return null;
         }
     }
 
+    /**
+     * Creates the digest used for file checksums
+     *
+     * @return a new SHA-256 digest
+     */
+    public static MessageDigest newChecksumDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    /**
+     * Calculates SHA-256 checksum of a text
+     *
+     * @param text the text to calculate checksum for
+     * @return SHA-256 checksum of the UTF-8 bytes as a hex string
+     */
+    public static String sha256Hex(String text) {
+        return toHexChecksum(newChecksumDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Formats a SHA-256 digest as a zero padded hex string
+     *
+     * @param bytes the digest bytes
+     * @return SHA-256 checksum as a hex string
+     */
+    public static String toHexChecksum(byte[] bytes) {
+        BigInteger number = new BigInteger(1, bytes);
+        StringBuilder hexString = new StringBuilder(number.toString(16));
+
+        while (hexString.length() < 64) {
+            hexString.insert(0, '0');
+        }
+
+        return hexString.toString();
+    }
+
     /**
      * Converts file size in bytes to human-readable format
      *
@@ -0,0 +1,42 @@
+package net.konjarla.aifilemonitor.util;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+/**
+ * Difference hash (dHash) of images. The image is reduced to 9x8 grey pixels and each bit
+ * tells whether a pixel is brighter than its right neighbour. Resized, recompressed or lightly
+ * edited copies of an image get hashes within a few bits of each other.
+ */
+public final class PerceptualHash {
+    private static final int WIDTH = 9;
+    private static final int HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    public static long dHash(BufferedImage image) {
+        // Area averaging reduces the image to the mean of each cell instead of sampling single pixels
+        Image scaled = image.getScaledInstance(WIDTH, HEIGHT, Image.SCALE_AREA_AVERAGING);
+        BufferedImage grey = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = grey.createGraphics();
+        try {
+            graphics.drawImage(scaled, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        Raster raster = grey.getRaster();
+        long hash = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH - 1; x++) {
+                hash <<= 1;
+                if (raster.getSample(x, y, 0) > raster.getSample(x + 1, y, 0)) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+}
@@ -44,4 +44,52 @@ CREATE TABLE IF NOT EXISTS public.file_chunks (
         REFERENCES public.files (id) MATCH SIMPLE
         ON UPDATE NO ACTION
         ON DELETE NO ACTION
-);
\ No newline at end of file
+);
+
+-- Hash of the chunk text, used to re-index only the chunks of a file that changed
+ALTER TABLE public.file_chunks ADD COLUMN IF NOT EXISTS content_hash character varying(64) COLLATE pg_catalog."default";
+CREATE INDEX IF NOT EXISTS file_chunks_file_id_idx ON public.file_chunks (file_id);
+
+ALTER TABLE public.files ADD COLUMN IF NOT EXISTS page_count integer;
+ALTER TABLE public.files ADD COLUMN IF NOT EXISTS ocr_pages jsonb;
+
+-- Create embedding_cache table, keyed by embedding model and normalized chunk text hash
+CREATE TABLE IF NOT EXISTS public.embedding_cache (
+    model_id character varying(255) COLLATE pg_catalog."default" NOT NULL,
+    text_hash character varying(64) COLLATE pg_catalog."default" NOT NULL,
+    embedding vector(1024),
+    created_at timestamp(6) with time zone,
+    CONSTRAINT embedding_cache_pkey PRIMARY KEY (model_id, text_hash)
+);
+
+-- Create image_hashes table, perceptual hashes of described images keyed by file checksum
+CREATE TABLE IF NOT EXISTS public.image_hashes (
+    checksum character varying(64) COLLATE pg_catalog."default" NOT NULL,
+    dhash bigint NOT NULL,
+    model_id character varying(255) COLLATE pg_catalog."default" NOT NULL,
+    description text COLLATE pg_catalog."default",
+    classifications jsonb,
+    created_at timestamp(6) with time zone,
+    CONSTRAINT image_hashes_pkey PRIMARY KEY (checksum)
+);
+CREATE INDEX IF NOT EXISTS image_hashes_dhash_idx ON public.image_hashes (model_id, dhash);
+
+-- Create ingestion_jobs table, the journal of file ingestion used to resume after a restart
+CREATE TABLE IF NOT EXISTS public.ingestion_jobs (
+    file_path character varying(1024) COLLATE pg_catalog."default" NOT NULL,
+    task_id character varying(255) COLLATE pg_catalog."default",
+    state character varying(16) COLLATE pg_catalog."default" NOT NULL,
+    priority character varying(16) COLLATE pg_catalog."default" NOT NULL,
+    attempts integer NOT NULL DEFAULT 0,
+    last_error text COLLATE pg_catalog."default",
+    next_attempt_at timestamp(6) with time zone,
+    created_at timestamp(6) with time zone,
+    updated_at timestamp(6) with time zone,
+    completed_at timestamp(6) with time zone,
+    CONSTRAINT ingestion_jobs_pkey PRIMARY KEY (file_path)
+);
+-- Modification time of the file when its last parse started
+ALTER TABLE public.ingestion_jobs ADD COLUMN IF NOT EXISTS source_modified_at timestamp(6) with time zone;
+CREATE INDEX IF NOT EXISTS ingestion_jobs_state_idx ON public.ingestion_jobs (state, next_attempt_at);
+CREATE INDEX IF NOT EXISTS ingestion_jobs_task_id_idx ON public.ingestion_jobs (task_id);
+CREATE INDEX IF NOT EXISTS ingestion_jobs_updated_at_idx ON public.ingestion_jobs (updated_at);
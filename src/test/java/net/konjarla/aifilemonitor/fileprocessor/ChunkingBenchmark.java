@@ -0,0 +1,92 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import net.konjarla.aifilemonitor.configuration.ChunkingConfiguration;
+import net.konjarla.aifilemonitor.configuration.ChunkingConfiguration.SplitterMode;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.transformer.splitter.TextSplitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures the chunking throughput of each {@link SplitterMode} the way files are chunked
+ * while they are parsed, through a {@link ChunkingContentHandler}. Runs without the application
+ * context, from the test classes so it is not part of the application:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=net.konjarla.aifilemonitor.fileprocessor.ChunkingBenchmark \
+ *     -Dexec.args="notes.md README.md"
+ * </pre>
+ * Without arguments a synthetic text of about 8 MB is used.
+ */
+public class ChunkingBenchmark {
+    private static final int WINDOW_CHARS = 65536;
+    private static final int READ_CHARS = 8192;
+    private static final int WARM_UP_RUNS = 2;
+    private static final int MEASURED_RUNS = 5;
+    private static final double CHARS_PER_TOKEN = 4.0;
+
+    public static void main(String[] args) throws IOException {
+        String text = args.length > 0 ? readFiles(args) : syntheticText(8 * 1024 * 1024);
+        double megabytes = text.getBytes(StandardCharsets.UTF_8).length / (1024.0 * 1024.0);
+        System.out.printf("Input: %.1f MB%n", megabytes);
+        for (SplitterMode mode : SplitterMode.values()) {
+            TextSplitter splitter = ChunkingConfiguration.createSplitter(mode, CHARS_PER_TOKEN);
+            for (int i = 0; i < WARM_UP_RUNS; i++) {
+                chunk(splitter, text);
+            }
+            long start = System.nanoTime();
+            int chunks = 0;
+            for (int i = 0; i < MEASURED_RUNS; i++) {
+                chunks = chunk(splitter, text);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9 / MEASURED_RUNS;
+            System.out.printf("%-12s %8.1f MB/s %8d chunks %8.1f ms per run%n", mode, megabytes / seconds, chunks,
+                    seconds * 1000);
+        }
+    }
+
+    private static int chunk(TextSplitter splitter, String text) {
+        int[] count = {0};
+        ChunkingContentHandler handler = new ChunkingContentHandler(splitter, ExtractedTextFormatter.defaults(),
+                Map.of(), chunk -> count[0]++, WINDOW_CHARS);
+        char[] chars = text.toCharArray();
+        for (int offset = 0; offset < chars.length; offset += READ_CHARS) {
+            handler.characters(chars, offset, Math.min(READ_CHARS, chars.length - offset));
+        }
+        handler.finish();
+        return count[0];
+    }
+
+    private static String readFiles(String[] paths) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (String path : paths) {
+            text.append(Files.readString(Path.of(path))).append('\n');
+        }
+        return text.toString();
+    }
+
+    // Prose like text: words of varying length, sentences and paragraphs
+    private static String syntheticText(int chars) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(chars + 64);
+        int sentenceWords = 0;
+        while (text.length() < chars) {
+            int wordLength = 2 + random.nextInt(9);
+            for (int i = 0; i < wordLength; i++) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+            if (++sentenceWords >= 8 + random.nextInt(16)) {
+                text.append(random.nextInt(6) == 0 ? ".\n\n" : ". ");
+                sentenceWords = 0;
+            } else {
+                text.append(' ');
+            }
+        }
+        return text.toString();
+    }
+}
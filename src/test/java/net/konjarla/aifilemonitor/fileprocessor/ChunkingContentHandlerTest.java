@@ -0,0 +1,78 @@
+package net.konjarla.aifilemonitor.fileprocessor;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkingContentHandlerTest {
+    private static final int WINDOW_CHARS = 1000;
+    // Chunks of 200 characters
+    private static final ApproximateTextSplitter SPLITTER = new ApproximateTextSplitter(50, 4.0, 50, 5, 10000);
+
+    @Test
+    void boundsWindowOfTextWithoutWhitespace() {
+        String text = "漢字仮名交じり文".repeat(1000);
+        List<Document> chunks = new ArrayList<>();
+        int maxBuffered = feed(text, 333, chunks);
+
+        assertTrue(maxBuffered <= 2 * WINDOW_CHARS, "buffered " + maxBuffered);
+        assertTrue(chunks.size() > 10, "chunks " + chunks.size());
+        assertEquals(text, join(chunks));
+    }
+
+    @Test
+    void boundsWindowOfLongWordAfterWhitespace() {
+        String text = "header line\n" + "0123456789abcdef".repeat(1000);
+        List<Document> chunks = new ArrayList<>();
+        int maxBuffered = feed(text, 500, chunks);
+
+        assertTrue(maxBuffered <= 2 * WINDOW_CHARS, "buffered " + maxBuffered);
+        assertEquals(text.replaceAll("\\s", ""), join(chunks).replaceAll("\\s", ""));
+    }
+
+    @Test
+    void cutsWindowBetweenCodePoints() {
+        // Characters outside the BMP are surrogate pairs, the odd read size splits pairs across reads
+        String text = "😀".repeat(5000);
+        List<Document> chunks = new ArrayList<>();
+        int maxBuffered = feed(text, 333, chunks);
+
+        assertTrue(maxBuffered <= 2 * WINDOW_CHARS, "buffered " + maxBuffered);
+        for (Document chunk : chunks) {
+            String chunkText = chunk.getText();
+            assertFalse(Character.isLowSurrogate(chunkText.charAt(0)), "chunk starts inside a code point");
+            assertFalse(Character.isHighSurrogate(chunkText.charAt(chunkText.length() - 1)),
+                    "chunk ends inside a code point");
+        }
+        assertEquals(text, join(chunks));
+    }
+
+    // Feeds the text in reads of the given size and returns the most characters buffered after a read
+    private static int feed(String text, int readSize, List<Document> chunks) {
+        ChunkingContentHandler handler = new ChunkingContentHandler(SPLITTER, ExtractedTextFormatter.defaults(),
+                Map.of(), chunks::add, WINDOW_CHARS);
+        char[] chars = text.toCharArray();
+        int maxBuffered = 0;
+        for (int offset = 0; offset < chars.length; offset += readSize) {
+            handler.characters(chars, offset, Math.min(readSize, chars.length - offset));
+            maxBuffered = Math.max(maxBuffered, handler.getBufferedChars());
+        }
+        handler.finish();
+        assertEquals(0, handler.getBufferedChars());
+        return maxBuffered;
+    }
+
+    private static String join(List<Document> chunks) {
+        StringBuilder joined = new StringBuilder();
+        chunks.forEach(chunk -> joined.append(chunk.getText()));
+        return joined.toString();
+    }
+}
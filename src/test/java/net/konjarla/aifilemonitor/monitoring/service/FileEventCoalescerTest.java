@@ -0,0 +1,103 @@
+package net.konjarla.aifilemonitor.monitoring.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+class FileEventCoalescerTest {
+    private final FileIndexService fileIndexService = mock(FileIndexService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void dropsFileCreatedAndDeletedAgain() {
+        FileEventCoalescer coalescer = coalescer(Duration.ZERO);
+        Path file = dir.resolve("temp.txt");
+
+        coalescer.onEvent(ENTRY_CREATE, file);
+        coalescer.onEvent(ENTRY_MODIFY, file);
+        coalescer.onEvent(ENTRY_DELETE, file);
+        coalescer.flush();
+
+        verifyNoInteractions(fileIndexService);
+        assertEquals(3, count("suppressed"));
+    }
+
+    @Test
+    void indexesFileDeletedAndCreatedAgain() throws IOException {
+        FileEventCoalescer coalescer = coalescer(Duration.ZERO);
+        Path file = Files.writeString(dir.resolve("replaced.txt"), "new content");
+
+        coalescer.onEvent(ENTRY_DELETE, file);
+        coalescer.onEvent(ENTRY_CREATE, file);
+        coalescer.flush();
+
+        verify(fileIndexService).indexFile(file.toFile().getAbsolutePath());
+        verifyNoMoreInteractions(fileIndexService);
+    }
+
+    @Test
+    void indexesModifiedFileOnce() throws IOException {
+        FileEventCoalescer coalescer = coalescer(Duration.ZERO);
+        Path file = Files.writeString(dir.resolve("saved.txt"), "content");
+
+        for (int i = 0; i < 5; i++) {
+            coalescer.onEvent(ENTRY_MODIFY, file);
+        }
+        coalescer.flush();
+        coalescer.flush();
+
+        verify(fileIndexService).indexFile(file.toFile().getAbsolutePath());
+        verifyNoMoreInteractions(fileIndexService);
+        assertEquals(1, count("dispatched"));
+        assertEquals(4, count("suppressed"));
+    }
+
+    @Test
+    void deletesFileModifiedAndDeleted() {
+        FileEventCoalescer coalescer = coalescer(Duration.ZERO);
+        Path file = dir.resolve("removed.txt");
+
+        coalescer.onEvent(ENTRY_MODIFY, file);
+        coalescer.onEvent(ENTRY_DELETE, file);
+        coalescer.flush();
+
+        verify(fileIndexService).deleteFile(file.toFile().getAbsolutePath());
+        verifyNoMoreInteractions(fileIndexService);
+    }
+
+    @Test
+    void holdsEventsUntilQuietPeriodEnds() throws IOException {
+        FileEventCoalescer coalescer = coalescer(Duration.ofHours(1));
+        Path file = Files.writeString(dir.resolve("busy.txt"), "content");
+
+        coalescer.onEvent(ENTRY_MODIFY, file);
+        coalescer.flush();
+
+        verifyNoInteractions(fileIndexService);
+    }
+
+    private FileEventCoalescer coalescer(Duration quietPeriod) {
+        return new FileEventCoalescer(fileIndexService, meterRegistry, quietPeriod, Duration.ofHours(1));
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("file.watch.events").tag("result", result).counter().count();
+    }
+}
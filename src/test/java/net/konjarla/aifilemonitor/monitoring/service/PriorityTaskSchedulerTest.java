@@ -0,0 +1,105 @@
+package net.konjarla.aifilemonitor.monitoring.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.konjarla.aifilemonitor.monitoring.model.ModelGroup;
+import net.konjarla.aifilemonitor.monitoring.model.TaskPriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriorityTaskSchedulerTest {
+    // Fake parse executor: holds the dispatched tasks, each keeps its slot until the test runs it
+    private final BlockingQueue<Runnable> dispatched = new LinkedBlockingQueue<>();
+    private final List<TaskPriority> ran = Collections.synchronizedList(new ArrayList<>());
+    private PriorityTaskScheduler scheduler;
+
+    @AfterEach
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void sharesSlotsByWeight() throws InterruptedException {
+        scheduler = scheduler("1h");
+        Runnable blocker = occupySlot();
+        for (int i = 0; i < 40; i++) {
+            submit(TaskPriority.INTERACTIVE);
+            submit(TaskPriority.BACKFILL);
+        }
+        blocker.run();
+
+        for (int i = 0; i < 40; i++) {
+            nextDispatched().run();
+        }
+        long interactive = ran.stream().filter(priority -> priority == TaskPriority.INTERACTIVE).count();
+        // Weights 3 and 1
+        assertTrue(interactive >= 29 && interactive <= 31, "interactive " + interactive + " of 40");
+    }
+
+    @Test
+    void dispatchesOverdueTaskFirst() throws InterruptedException {
+        scheduler = scheduler("50ms");
+        Runnable blocker = occupySlot();
+        submit(TaskPriority.BACKFILL);
+        for (int i = 0; i < 10; i++) {
+            submit(TaskPriority.INTERACTIVE);
+        }
+        Thread.sleep(100);
+        blocker.run();
+
+        nextDispatched().run();
+        assertEquals(List.of(TaskPriority.BACKFILL), ran);
+        Map<String, Object> backfillStats = scheduler.getStats().get(TaskPriority.BACKFILL.name());
+        assertEquals(1L, backfillStats.get("starvationDispatches"));
+    }
+
+    // A single parse slot; interactive tasks weigh 3 and never become overdue
+    private PriorityTaskScheduler scheduler(String backfillMaxWait) {
+        MockEnvironment environment = new MockEnvironment();
+        environment.setConversionService(new ApplicationConversionService());
+        setClass(environment, TaskPriority.INTERACTIVE, 3, "1h");
+        setClass(environment, TaskPriority.BACKFILL, 1, backfillMaxWait);
+        setClass(environment, TaskPriority.MAINTENANCE, 1, "1h");
+        return new PriorityTaskScheduler(dispatched::add, 1, 4, environment, new SimpleMeterRegistry());
+    }
+
+    private static void setClass(MockEnvironment environment, TaskPriority priority, int weight, String maxWait) {
+        String prefix = "ingestion.priority." + priority.name().toLowerCase() + ".";
+        environment.setProperty(prefix + "weight", String.valueOf(weight));
+        environment.setProperty(prefix + "max-running", "10");
+        environment.setProperty(prefix + "max-wait", maxWait);
+        environment.setProperty(prefix + "queue-capacity", "100");
+    }
+
+    // Dispatches a maintenance task and holds it, so the tasks queued next wait for the slot together
+    private Runnable occupySlot() throws InterruptedException {
+        scheduler.submit(TaskPriority.MAINTENANCE, ModelGroup.TEXT, () -> {
+        });
+        return nextDispatched();
+    }
+
+    private void submit(TaskPriority priority) {
+        scheduler.submit(priority, ModelGroup.TEXT, () -> ran.add(priority));
+    }
+
+    private Runnable nextDispatched() throws InterruptedException {
+        Runnable task = dispatched.poll(5, TimeUnit.SECONDS);
+        assertNotNull(task, "no task dispatched");
+        return task;
+    }
+}
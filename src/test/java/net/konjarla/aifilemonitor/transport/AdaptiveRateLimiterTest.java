@@ -0,0 +1,90 @@
+package net.konjarla.aifilemonitor.transport;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.konjarla.aifilemonitor.transport.DownstreamLimiter.Downstream;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdaptiveRateLimiterTest {
+    private static final int MAX_CONCURRENCY = 8;
+    private static final byte[] BODY = new byte[64];
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // Unpaced, so only the concurrency limit applies
+    private final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(meterRegistry, MAX_CONCURRENCY,
+            MAX_CONCURRENCY, 0, 0, 1, 0.5, 1);
+    private final ClientHttpRequestInterceptor interceptor = limiter.interceptor(Downstream.OLLAMA);
+
+    @Test
+    void decreasesLimitWhenRateLimited() throws IOException {
+        call(HttpStatus.TOO_MANY_REQUESTS);
+        assertEquals(4.0, limit());
+
+        call(HttpStatus.SERVICE_UNAVAILABLE);
+        assertEquals(2.0, limit());
+    }
+
+    @Test
+    void decreasesLimitWhenRequestFails() {
+        assertThrows(SocketTimeoutException.class, () -> interceptor.intercept(request(), BODY, (request, body) -> {
+            throw new SocketTimeoutException("Read timed out");
+        }));
+
+        assertEquals(4.0, limit());
+    }
+
+    @Test
+    void decreasesLimitOncePerRound() throws IOException {
+        // The outer request was in flight when the inner one was rate limited, it saw the same overload
+        interceptor.intercept(request(), BODY, (outer, outerBody) -> {
+            call(HttpStatus.TOO_MANY_REQUESTS);
+            return new MockClientHttpResponse(new byte[0], HttpStatus.TOO_MANY_REQUESTS);
+        });
+
+        assertEquals(4.0, limit());
+    }
+
+    @Test
+    void increasesLimitOnSuccess() throws IOException {
+        call(HttpStatus.TOO_MANY_REQUESTS);
+        call(HttpStatus.OK);
+        assertEquals(4.25, limit());
+
+        for (int i = 0; i < 100; i++) {
+            call(HttpStatus.OK);
+        }
+        assertEquals(MAX_CONCURRENCY, limit());
+    }
+
+    @Test
+    void keepsLimitOnRejectedInput() throws IOException {
+        call(HttpStatus.BAD_REQUEST);
+
+        assertEquals(MAX_CONCURRENCY, limit());
+    }
+
+    private void call(HttpStatus status) throws IOException {
+        ClientHttpRequestExecution execution = (request, body) -> new MockClientHttpResponse(new byte[0], status);
+        interceptor.intercept(request(), BODY, execution);
+    }
+
+    private static MockClientHttpRequest request() {
+        return new MockClientHttpRequest(HttpMethod.POST, URI.create("http://localhost:11434/api/embed"));
+    }
+
+    private double limit() {
+        return meterRegistry.get("llm.limiter.concurrency.limit").tag("endpoint", "ollama").gauge().value();
+    }
+}
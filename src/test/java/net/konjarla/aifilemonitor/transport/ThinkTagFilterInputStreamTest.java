@@ -0,0 +1,66 @@
+package net.konjarla.aifilemonitor.transport;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ThinkTagFilterInputStreamTest {
+
+    @Test
+    void removesPlainThinkBlock() throws IOException {
+        assertFiltered("{\"content\":\"<think>Let me see</think>Answer\"}", "{\"content\":\"Answer\"}");
+    }
+
+    @Test
+    void removesEscapedThinkBlock() throws IOException {
+        assertFiltered("{\"content\":\"\\u003cthink\\u003eLet me see\\u003c\\u002Fthink\\u003eAnswer\"}",
+                "{\"content\":\"Answer\"}");
+    }
+
+    @Test
+    void keepsTextAroundThinkBlock() throws IOException {
+        assertFiltered("{\"content\":\"a <b> <thin <think>x</think> c\\\"d\"}",
+                "{\"content\":\"a <b> <thin  c\\\"d\"}");
+    }
+
+    @Test
+    void passesUnclosedThinkBlockThrough() throws IOException {
+        assertFiltered("{\"content\":\"<think>still thinking\"}", "{\"content\":\"<think>still thinking\"}");
+        assertFiltered("{\"content\":\"\\u003cthink\\u003estill thinking\"}",
+                "{\"content\":\"<think>still thinking\"}");
+    }
+
+    @Test
+    void keepsEscapedBackslashBeforeEscapeSequence() throws IOException {
+        // An escaped backslash followed by the text u003c, not an escaped tag
+        String escapedBackslash = "{\"content\":\"a \\\\u003cthink\\\\u003e b\"}";
+        assertFiltered(escapedBackslash, escapedBackslash);
+        // An escaped backslash followed by an escaped tag
+        assertFiltered("{\"content\":\"\\\\\\u003cthink\\u003ex\\u003c/think\\u003e\"}",
+                "{\"content\":\"\\\\\"}");
+    }
+
+    // Checks the whole body at once and split into reads of a few bytes, so tags and escapes span reads
+    private static void assertFiltered(String body, String expected) throws IOException {
+        for (int readSize : new int[]{Integer.MAX_VALUE, 1, 2, 3, 5}) {
+            assertEquals(expected, filter(body, readSize), "read size " + readSize);
+        }
+    }
+
+    private static String filter(String body, int readSize) throws IOException {
+        InputStream in = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, readSize));
+            }
+        };
+        try (InputStream filtered = new ThinkTagFilterInputStream(in)) {
+            return new String(filtered.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
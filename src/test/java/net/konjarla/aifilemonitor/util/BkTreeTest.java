@@ -0,0 +1,84 @@
+package net.konjarla.aifilemonitor.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BkTreeTest {
+
+    @Test
+    void findsSameHashesAsBruteForceScan() {
+        Random random = new Random(42);
+        Set<Long> hashes = new LinkedHashSet<>();
+        // Clusters of near duplicates around random hashes, as perceptual hashes of similar images are
+        for (int i = 0; i < 200; i++) {
+            long center = random.nextLong();
+            hashes.add(center);
+            for (int j = 0; j < 10; j++) {
+                hashes.add(flipBits(center, random.nextInt(12), random));
+            }
+        }
+        BkTree tree = new BkTree();
+        hashes.forEach(tree::add);
+        List<Long> all = new ArrayList<>(hashes);
+
+        for (int i = 0; i < 100; i++) {
+            long query = i % 2 == 0 ? flipBits(all.get(random.nextInt(all.size())), random.nextInt(6), random)
+                    : random.nextLong();
+            for (int maxDistance : new int[]{0, 3, 8, 16}) {
+                List<BkTree.Match> matches = tree.search(query, maxDistance);
+
+                assertEquals(bruteForce(all, query, maxDistance), toMap(matches),
+                        "query " + Long.toHexString(query) + " within " + maxDistance);
+                for (int k = 1; k < matches.size(); k++) {
+                    assertTrue(matches.get(k - 1).getDistance() <= matches.get(k).getDistance(), "closest first");
+                }
+            }
+        }
+    }
+
+    @Test
+    void ignoresHashesAlreadyInTree() {
+        BkTree tree = new BkTree();
+        tree.add(0x0FL);
+        tree.add(0xF0L);
+        tree.add(0x0FL);
+
+        assertEquals(2, tree.size());
+        assertEquals(1, tree.search(0x0FL, 0).size());
+    }
+
+    private static Map<Long, Integer> bruteForce(List<Long> hashes, long query, int maxDistance) {
+        Map<Long, Integer> matches = new HashMap<>();
+        for (long hash : hashes) {
+            int distance = Long.bitCount(hash ^ query);
+            if (distance <= maxDistance) {
+                matches.put(hash, distance);
+            }
+        }
+        return matches;
+    }
+
+    private static Map<Long, Integer> toMap(List<BkTree.Match> matches) {
+        Map<Long, Integer> map = new HashMap<>();
+        matches.forEach(match -> map.put(match.getHash(), match.getDistance()));
+        assertEquals(matches.size(), map.size(), "hash matched twice");
+        return map;
+    }
+
+    private static long flipBits(long hash, int bits, Random random) {
+        for (int i = 0; i < bits; i++) {
+            hash ^= 1L << random.nextInt(64);
+        }
+        return hash;
+    }
+}